@@ -107,7 +107,7 @@ export default function Dashboard() {
             weight: b.weight,
             state: b.state,
             circuitState: b.circuitState,
-            latency: b.metrics.p95Latency,
+            latency: Math.round(b.metrics.p95Latency * 100) / 100,
             rps: b.metrics.requestRate,
             errorRate: b.metrics.errorRate,
             healthScore: b.healthScore || 0,
@@ -0,0 +1,52 @@
+package com.sentinel.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Runs the selected benchmarks once per thread count in {@link #THREAD_COUNTS}, so every
+ * hot path is measured uncontended, moderately contended and heavily contended.
+ * Accepts the regular JMH command line; an explicit {@code -t} runs that thread count only.
+ */
+public final class BenchmarkRunner {
+
+    private static final int[] THREAD_COUNTS = {1, 8, 64};
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws CommandLineOptionException, IOException, RunnerException {
+        CommandLineOptions cmdOptions = new CommandLineOptions(args);
+
+        if (cmdOptions.shouldHelp() || cmdOptions.shouldList() || cmdOptions.shouldListProfilers()
+                || cmdOptions.shouldListResultFormats() || cmdOptions.shouldListWithParams()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+
+        if (cmdOptions.getThreads().hasValue()) {
+            new Runner(cmdOptions).run();
+            return;
+        }
+
+        for (int threads : THREAD_COUNTS) {
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .parent(cmdOptions)
+                    .threads(threads);
+
+            if (!cmdOptions.getResult().hasValue()) {
+                options.resultFormat(ResultFormatType.JSON)
+                        .result("jmh-result-t" + threads + ".json");
+            }
+
+            new Runner(options.build()).run();
+        }
+    }
+}
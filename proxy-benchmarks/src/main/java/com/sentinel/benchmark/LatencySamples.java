@@ -0,0 +1,41 @@
+package com.sentinel.benchmark;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.SplittableRandom;
+
+/**
+ * Per-thread stream of pre-generated latencies in microseconds with a long-tailed distribution
+ * (mostly 10-60ms, a few multi-second outliers), so benchmarks do not pay for
+ * random number generation inside the measured call.
+ */
+@State(Scope.Thread)
+public class LatencySamples {
+
+    private static final int SIZE = 4096;
+    private static final int MASK = SIZE - 1;
+
+    private final long[] latencies = new long[SIZE];
+    private int index;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < SIZE; i++) {
+            double roll = random.nextDouble();
+            if (roll < 0.90) {
+                latencies[i] = 10_000 + random.nextLong(50_000);
+            } else if (roll < 0.99) {
+                latencies[i] = 60_000 + random.nextLong(440_000);
+            } else {
+                latencies[i] = 500_000 + random.nextLong(9_500_000);
+            }
+        }
+    }
+
+    public long next() {
+        return latencies[index++ & MASK];
+    }
+}
@@ -0,0 +1,99 @@
+package com.sentinel.control;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sentinel.benchmark.LatencySamples;
+import com.sentinel.metrics.BackendMetrics;
+import com.sentinel.metrics.MetricsCollector;
+import com.sentinel.metrics.MetricsRegistry;
+import com.sentinel.proxy.BackendPool;
+import com.sentinel.proxy.CircuitGate;
+import com.sentinel.proxy.ConcurrencyLimiter;
+import com.sentinel.proxy.ConnectionPoolManager;
+import com.sentinel.proxy.RequestCoalescer;
+import com.sentinel.proxy.ResponseCache;
+import com.sentinel.websocket.MetricsBroadcaster;
+import com.sentinel.websocket.MetricsWebSocketHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time for one full control tick, from snapshotting every backend's metrics to rebuilding the
+ * routing table, as the fleet grows. Every tenth backend is slow and every twenty-fifth fails a
+ * fifth of its requests, so scoring, outlier detection and weight adjustment all have work to do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ControlLoopBenchmark {
+
+    private static final int SAMPLES_PER_BACKEND = 200;
+
+    @Param({"10", "1000", "10000"})
+    private int backendCount;
+
+    private ControlLoop controlLoop;
+
+    @Setup
+    public void setUp() {
+        BackendPool backendPool = new BackendPool();
+        // Window long enough that the recorded samples outlive the whole run.
+        MetricsRegistry metricsRegistry = new MetricsRegistry(600, 20, 0.3, 5, 256, backendCount, 256);
+        LatencySamples samples = new LatencySamples();
+        samples.setUp();
+
+        for (int i = 0; i < backendCount; i++) {
+            String id = "backend-" + i;
+            backendPool.registerBackend(id, "http://localhost:" + (9000 + i), 100);
+            BackendMetrics metrics = metricsRegistry.getOrCreate(id);
+
+            long slowdown = i % 10 == 0 ? 3 : 1;
+            for (int j = 0; j < SAMPLES_PER_BACKEND; j++) {
+                boolean error = i % 25 == 0 && j % 5 == 0;
+                long latencyNanos = TimeUnit.MICROSECONDS.toNanos(samples.next()) * slowdown;
+                metrics.record(latencyNanos / 100, latencyNanos / 2, latencyNanos, error ? 500 : 200,
+                        error ? MetricsCollector.FLAG_ERROR : 0);
+            }
+        }
+
+        ConnectionPoolManager connectionPoolManager = new ConnectionPoolManager(5000, 1, false, 500, false,
+                60, 0, "/", metricsRegistry, backendPool);
+        CircuitGate circuitGate = new CircuitGate(3, 5, 10, backendPool);
+        CircuitBreaker circuitBreaker = new CircuitBreaker(5, 20.0, circuitGate);
+
+        controlLoop = new ControlLoop(
+                backendPool,
+                metricsRegistry,
+                new HealthScorer(1.5, 2.5, 5.0, 15.0, 2.0, 70.0, 90.0, 256,
+                        new ConcurrencyLimiter(false, 20, 5, 1000)),
+                new RiskPredictor(0.5),
+                new ModeStateMachine(),
+                new WeightAdjuster(10, 5, 0, 0, 3, 10, connectionPoolManager),
+                circuitBreaker,
+                new OutlierDetector(true, 3, 50, 3.0, 5.0, 0.25, 50, 30, 300, circuitBreaker),
+                new OverloadDetector(),
+                new MetricsBroadcaster(new MetricsWebSocketHandler(new ObjectMapper()), metricsRegistry),
+                new ResponseCache(false, 64, 1024, 60, 4, new SimpleMeterRegistry()),
+                new RequestCoalescer(false, false, List.of("/**"), 1024, 5000, new SimpleMeterRegistry()));
+    }
+
+    @Benchmark
+    public void tick() {
+        controlLoop.execute();
+    }
+}
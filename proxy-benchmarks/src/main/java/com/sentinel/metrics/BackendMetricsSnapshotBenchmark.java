@@ -0,0 +1,81 @@
+package com.sentinel.metrics;
+
+import com.sentinel.benchmark.LatencySamples;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reading one backend's metrics for a control tick: a single snapshot versus the
+ * individual getter calls the control pipeline and broadcaster used to make.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BackendMetricsSnapshotBenchmark {
+
+    private BackendMetrics metrics;
+
+    @Setup
+    public void setUp() {
+        metrics = new BackendMetrics("bench", 30, 30, 0.3, 5);
+
+        LatencySamples samples = new LatencySamples();
+        samples.setUp();
+        for (int i = 0; i < 10_000; i++) {
+            boolean error = i % 50 == 0;
+            long latencyNanos = TimeUnit.MICROSECONDS.toNanos(samples.next());
+            metrics.record(latencyNanos / 100, latencyNanos / 2, latencyNanos, error ? 500 : 200,
+                    error ? MetricsCollector.FLAG_ERROR : 0);
+        }
+    }
+
+    @Benchmark
+    public BackendMetricsSnapshot snapshot() {
+        return metrics.snapshot();
+    }
+
+    @Benchmark
+    public void individualGetters(Blackhole blackhole) {
+        // HealthScorer
+        blackhole.consume(metrics.getP95Latency());
+        blackhole.consume(metrics.getP95Latency());
+        blackhole.consume(metrics.getLatencyVariance());
+        blackhole.consume(metrics.getSaturationPercent());
+        blackhole.consume(metrics.getErrorRate());
+        blackhole.consume(metrics.getLatencyTrend());
+        blackhole.consume(metrics.getP95Latency());
+        blackhole.consume(metrics.getErrorRateTrend());
+        blackhole.consume(metrics.getErrorRate());
+        // RiskPredictor, OverloadDetector
+        blackhole.consume(metrics.getRequestCount().sum());
+        blackhole.consume(metrics.getRequestsPerSecond());
+        // CircuitBreaker
+        blackhole.consume(metrics.getErrorRate());
+        blackhole.consume(metrics.getTimeoutRate());
+        blackhole.consume(metrics.getErrorCount().sum());
+        // MetricsBroadcaster
+        blackhole.consume(metrics.getP50Latency());
+        blackhole.consume(metrics.getP95Latency());
+        blackhole.consume(metrics.getP99Latency());
+        blackhole.consume(metrics.getP95FirstByteLatency());
+        blackhole.consume(metrics.getPoolWaitTime());
+        blackhole.consume(metrics.getErrorRate());
+        blackhole.consume(metrics.getTimeoutRate());
+        blackhole.consume(metrics.getInflightCount());
+        blackhole.consume(metrics.getRequestsPerSecond());
+    }
+}
@@ -0,0 +1,41 @@
+package com.sentinel.metrics;
+
+import com.sentinel.benchmark.LatencySamples;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecayingRateBenchmark {
+
+    private DecayingRate rate;
+
+    @Setup
+    public void setUp() {
+        rate = new DecayingRate(0.3, TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Benchmark
+    public void record(LatencySamples samples) {
+        rate.record(samples.next() > 500_000);
+    }
+
+    @Benchmark
+    public double getValue() {
+        return rate.getValue();
+    }
+}
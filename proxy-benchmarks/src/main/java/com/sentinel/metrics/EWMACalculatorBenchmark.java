@@ -0,0 +1,36 @@
+package com.sentinel.metrics;
+
+import com.sentinel.benchmark.LatencySamples;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EWMACalculatorBenchmark {
+
+    private EWMACalculator ewma;
+
+    @Setup
+    public void setUp() {
+        ewma = new EWMACalculator(0.3);
+    }
+
+    @Benchmark
+    public void update(LatencySamples samples) {
+        ewma.update(samples.next());
+    }
+}
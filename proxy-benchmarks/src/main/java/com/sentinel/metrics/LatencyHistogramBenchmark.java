@@ -0,0 +1,36 @@
+package com.sentinel.metrics;
+
+import com.sentinel.benchmark.LatencySamples;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LatencyHistogramBenchmark {
+
+    private LatencyHistogram histogram;
+
+    @Setup
+    public void setUp() {
+        histogram = new LatencyHistogram(5, TimeUnit.MINUTES.toMicros(1));
+    }
+
+    @Benchmark
+    public int findBucketIndex(LatencySamples samples) {
+        return histogram.findBucketIndex(samples.next());
+    }
+}
@@ -0,0 +1,131 @@
+package com.sentinel.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsCollectorBenchmark {
+
+    @Param({"1", "8"})
+    private int backendCount;
+
+    @Param({"direct", "ring"})
+    private String ingestion;
+
+    private MetricsCollector collector;
+    private String[] backendIds;
+    private BackendMetrics[] backendMetrics;
+
+    @Setup
+    public void setUp() {
+        MetricsRegistry registry = new MetricsRegistry(30, 30, 0.3, 5, 256, 10000, 256);
+        if ("ring".equals(ingestion)) {
+            RingBufferMetricsCollector ringCollector = new RingBufferMetricsCollector(registry, 65536, new SimpleMeterRegistry());
+            ringCollector.start();
+            collector = ringCollector;
+        } else {
+            collector = new RealMetricsCollector(registry);
+        }
+
+        backendIds = new String[backendCount];
+        backendMetrics = new BackendMetrics[backendCount];
+        for (int i = 0; i < backendCount; i++) {
+            backendIds[i] = "backend-" + i;
+            backendMetrics[i] = collector.requestStarted(i, backendIds[i]);
+            collector.requestFinished(backendMetrics[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        if (collector instanceof RingBufferMetricsCollector ringCollector) {
+            ringCollector.stop();
+            System.out.println("ring: dropped=" + ringCollector.getDroppedCount());
+        }
+    }
+
+    /**
+     * Outcomes are generated up front as primitives, the way the proxy hands them over. Roughly 2%
+     * are server errors and 1% timeouts. Run with {@code -prof gc}: the allocation rate per
+     * operation should be zero.
+     */
+    @State(Scope.Thread)
+    public static class Outcomes {
+
+        private static final int SIZE = 1024;
+        private static final int MASK = SIZE - 1;
+
+        private final int[] backendIndices = new int[SIZE];
+        private final long[] poolWaitTimes = new long[SIZE];
+        private final long[] firstByteTimes = new long[SIZE];
+        private final long[] latencies = new long[SIZE];
+        private final int[] statusCodes = new int[SIZE];
+        private final byte[] flags = new byte[SIZE];
+        private int index;
+
+        @Setup(Level.Trial)
+        public void setUp(MetricsCollectorBenchmark benchmark) {
+            SplittableRandom random = new SplittableRandom(7);
+
+            for (int i = 0; i < SIZE; i++) {
+                double roll = random.nextDouble();
+                boolean timeout = roll < 0.01;
+                int status = timeout ? 504 : roll < 0.03 ? 500 : 200;
+
+                backendIndices[i] = random.nextInt(benchmark.backendCount);
+                latencies[i] = TimeUnit.MILLISECONDS.toNanos(timeout ? 5000 : 10 + random.nextLong(90));
+                poolWaitTimes[i] = TimeUnit.MICROSECONDS.toNanos(20 + random.nextLong(80));
+                firstByteTimes[i] = timeout ? -1 : latencies[i] - TimeUnit.MICROSECONDS.toNanos(random.nextLong(500));
+                statusCodes[i] = status;
+                flags[i] = timeout
+                        ? (byte) (MetricsCollector.FLAG_TIMEOUT | MetricsCollector.FLAG_ERROR)
+                        : status != 200 ? MetricsCollector.FLAG_ERROR : 0;
+            }
+        }
+
+        int nextSlot() {
+            return index++ & MASK;
+        }
+    }
+
+    @Benchmark
+    public void record(Outcomes outcomes) {
+        int slot = outcomes.nextSlot();
+        int backendIndex = outcomes.backendIndices[slot];
+        collector.record(backendMetrics[backendIndex], outcomes.poolWaitTimes[slot], outcomes.firstByteTimes[slot],
+                outcomes.latencies[slot], outcomes.statusCodes[slot], outcomes.flags[slot]);
+    }
+
+    /**
+     * The full per-request sequence issued by the proxy filter.
+     */
+    @Benchmark
+    public void request(Outcomes outcomes) {
+        int slot = outcomes.nextSlot();
+        int backendIndex = outcomes.backendIndices[slot];
+        BackendMetrics metrics = collector.requestStarted(backendIndex, backendIds[backendIndex]);
+        collector.record(metrics, outcomes.poolWaitTimes[slot], outcomes.firstByteTimes[slot],
+                outcomes.latencies[slot], outcomes.statusCodes[slot], outcomes.flags[slot]);
+        collector.requestFinished(metrics);
+    }
+}
@@ -0,0 +1,47 @@
+package com.sentinel.metrics;
+
+import com.sentinel.benchmark.LatencySamples;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RollingHistogramBenchmark {
+
+    private RollingHistogram histogram;
+
+    @Setup
+    public void setUp() {
+        histogram = new RollingHistogram(30, 30, 5, TimeUnit.MINUTES.toMicros(1));
+
+        LatencySamples samples = new LatencySamples();
+        samples.setUp();
+        for (int i = 0; i < 100_000; i++) {
+            histogram.record(samples.next());
+        }
+    }
+
+    @Benchmark
+    public void record(LatencySamples samples) {
+        histogram.record(samples.next());
+    }
+
+    @Benchmark
+    public long p99() {
+        return histogram.getPercentile(99.0);
+    }
+}
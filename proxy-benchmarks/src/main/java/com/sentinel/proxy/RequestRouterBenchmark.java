@@ -0,0 +1,74 @@
+package com.sentinel.proxy;
+
+import com.sentinel.metrics.BackendMetrics;
+import com.sentinel.metrics.MetricsRegistry;
+import com.sentinel.model.Backend;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestRouterBenchmark {
+
+    private static final int KEY_COUNT = 1024;
+
+    @Param({"weighted", "p2c", "hash"})
+    private String strategy;
+
+    @Param({"3", "50"})
+    private int backendCount;
+
+    private RequestRouter router;
+    private long[] keys;
+    private int nextKey;
+
+    @Setup
+    public void setUp() {
+        BackendPool backendPool = new BackendPool();
+        MetricsRegistry metricsRegistry = new MetricsRegistry(30, 30, 0.3, 5, 256, 10000, 256);
+
+        for (int i = 0; i < backendCount; i++) {
+            String id = "backend-" + i;
+            backendPool.registerBackend(id, "http://localhost:" + (9000 + i), 50 + i * 10);
+
+            BackendMetrics metrics = metricsRegistry.getOrCreate(id);
+            metrics.getLatencyEWMA().update(20 + i);
+            for (int j = 0; j < i % 5; j++) {
+                metrics.incrementInflight();
+            }
+        }
+
+        RoutingStrategy routingStrategy = switch (strategy) {
+            case "p2c" -> new PowerOfTwoChoicesStrategy(metricsRegistry);
+            case "hash" -> new ConsistentHashStrategy("", 0, 2);
+            default -> new WeightedRandomStrategy();
+        };
+        router = new RequestRouter(backendPool, routingStrategy);
+
+        keys = new long[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys[i] = HashRing.hash("/users/" + i);
+        }
+    }
+
+    @Benchmark
+    public Optional<Backend> selectBackend() {
+        return router.selectBackend(keys[nextKey++ & (KEY_COUNT - 1)]);
+    }
+}
@@ -1,12 +1,17 @@
 package com.sentinel.api;
 
+import com.sentinel.control.ControlTrigger;
 import com.sentinel.control.RiskLevel;
+import com.sentinel.metrics.MetricsRegistry;
 import com.sentinel.model.Backend;
 import com.sentinel.model.SystemMode;
 import com.sentinel.proxy.BackendPool;
+import com.sentinel.proxy.CircuitGate;
+import com.sentinel.proxy.ConcurrencyLimiter;
+import com.sentinel.proxy.ConnectionPoolManager;
 import com.sentinel.websocket.MetricsBroadcaster;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -20,13 +25,36 @@ import static com.sentinel.control.OverloadDetector.OverloadType;
 @Slf4j
 @RestController
 @RequestMapping("/api/backends")
-@RequiredArgsConstructor
 @CrossOrigin(origins = "*")
 public class BackendController {
 
-    private static final int MAX_BACKENDS = 4;
+    private final int maxBackends;
     private final BackendPool backendPool;
     private final MetricsBroadcaster metricsBroadcaster;
+    private final ConnectionPoolManager connectionPoolManager;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final CircuitGate circuitGate;
+    private final MetricsRegistry metricsRegistry;
+    private final ControlTrigger controlTrigger;
+
+    public BackendController(
+            @Value("${sentinel.proxy.maxBackends:10000}") int maxBackends,
+            BackendPool backendPool,
+            MetricsBroadcaster metricsBroadcaster,
+            ConnectionPoolManager connectionPoolManager,
+            ConcurrencyLimiter concurrencyLimiter,
+            CircuitGate circuitGate,
+            MetricsRegistry metricsRegistry,
+            ControlTrigger controlTrigger) {
+        this.maxBackends = maxBackends;
+        this.backendPool = backendPool;
+        this.metricsBroadcaster = metricsBroadcaster;
+        this.connectionPoolManager = connectionPoolManager;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.circuitGate = circuitGate;
+        this.metricsRegistry = metricsRegistry;
+        this.controlTrigger = controlTrigger;
+    }
 
     @GetMapping
     public ResponseEntity<List<BackendInfo>> getAllBackends() {
@@ -45,9 +73,9 @@ public class BackendController {
 
     @PostMapping
     public ResponseEntity<?> addBackend(@RequestBody AddBackendRequest request) {
-        if (backendPool.getAllBackends().size() >= MAX_BACKENDS) {
+        if (backendPool.size() >= maxBackends) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                    .body(Map.of("error", "Maximum " + MAX_BACKENDS + " backends allowed"));
+                    .body(Map.of("error", "Maximum " + maxBackends + " backends allowed"));
         }
 
         if (request.url() == null || request.url().isBlank()) {
@@ -55,10 +83,11 @@ public class BackendController {
                     .body(Map.of("error", "Backend URL is required"));
         }
 
-        String backendId = "backend-" + (backendPool.getAllBackends().size() + 1);
+        String backendId = nextBackendId();
         Backend backend = new Backend(backendId, request.url(), 100);
 
         backendPool.addBackend(backend);
+        connectionPoolManager.prewarm(backend);
         log.info("Backend added: id={}, url={}", backendId, request.url());
 
         broadcastCurrentState();
@@ -111,9 +140,7 @@ public class BackendController {
 
     @DeleteMapping("/{id}")
     public ResponseEntity<?> removeBackend(@PathVariable String id) {
-        var backend = backendPool.getAllBackends().stream()
-                .filter(b -> b.getId().equals(id))
-                .findFirst();
+        var backend = backendPool.getBackend(id);
 
         boolean removed = backendPool.removeBackend(id);
 
@@ -121,6 +148,12 @@ public class BackendController {
             return ResponseEntity.notFound().build();
         }
 
+        connectionPoolManager.evict(id);
+        concurrencyLimiter.remove(id);
+        circuitGate.remove(id);
+        metricsRegistry.remove(id);
+        controlTrigger.remove(id);
+
         backend.ifPresent(b -> {
             try {
                 var resetUrl = b.getUrl() + "/_admin/reset";
@@ -144,6 +177,18 @@ public class BackendController {
         return ResponseEntity.noContent().build();
     }
 
+    /**
+     * First free id from the current pool size up, so an id freed by a removal is never handed
+     * out while a later-numbered backend still holds it.
+     */
+    private String nextBackendId() {
+        int n = backendPool.size() + 1;
+        while (backendPool.getBackend("backend-" + n).isPresent()) {
+            n++;
+        }
+        return "backend-" + n;
+    }
+
     private boolean resetBackend(Backend backend) {
         try {
             var resetUrl = backend.getUrl() + "/_admin/reset";
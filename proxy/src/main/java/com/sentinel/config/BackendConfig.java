@@ -38,6 +38,8 @@ public class BackendConfig {
         private List<BackendDefinition> backends;
         private long requestTimeout = 5000;
         private int maxConnections = 2000;
+        private boolean async = false;
+        private boolean forwardHeaders = true;
     }
 
     @Data
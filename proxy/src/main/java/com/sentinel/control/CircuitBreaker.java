@@ -1,116 +1,81 @@
 package com.sentinel.control;
 
-import com.sentinel.metrics.BackendMetrics;
+import com.sentinel.metrics.BackendMetricsSnapshot;
 import com.sentinel.model.Backend;
-import com.sentinel.model.CircuitState;
+import com.sentinel.proxy.CircuitGate;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.time.Instant;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
+/**
+ * Windowed half of the circuit breaker, evaluated from the control loop and {@link ControlTrigger}.
+ * Connection-failure streaks and HALF_OPEN probing are handled per request by {@link CircuitGate},
+ * which also performs every transition decided here.
+ */
 @Slf4j
 @Component
 public class CircuitBreaker {
 
     private final int failureThreshold;
     private final double timeoutRateThreshold;
-    private final int retryDelay;
-
-    private final Map<String, CircuitData> circuitData = new ConcurrentHashMap<>();
+    private final CircuitGate circuitGate;
 
     public CircuitBreaker(
             @Value("${sentinel.control.circuitBreaker.failureThreshold:5}") int failureThreshold,
             @Value("${sentinel.control.circuitBreaker.timeoutRateThreshold:20.0}") double timeoutRateThreshold,
-            @Value("${sentinel.control.circuitBreaker.retryDelay:10}") int retryDelay) {
+            CircuitGate circuitGate) {
         this.failureThreshold = failureThreshold;
         this.timeoutRateThreshold = timeoutRateThreshold;
-        this.retryDelay = retryDelay;
+        this.circuitGate = circuitGate;
     }
 
-    public void evaluateAndUpdate(Backend backend, BackendMetrics metrics) {
-        CircuitData data = circuitData.computeIfAbsent(
-                backend.getId(),
-                id -> new CircuitData()
-        );
-
-        CircuitState currentState = backend.getCircuitState();
-        CircuitState newState = determineState(currentState, data, metrics);
-
-        if (newState != currentState) {
-            backend.transitionCircuit(newState);
-            data.lastTransition = Instant.now();
-            log.info("Circuit breaker transition: backend={}, {} -> {}",
-                    backend.getId(), currentState, newState);
-        }
+    /**
+     * Returns true if the circuit changed state.
+     */
+    public boolean evaluateAndUpdate(Backend backend, BackendMetricsSnapshot metrics) {
+        return switch (backend.getCircuitState()) {
+            case CLOSED -> evaluateClosed(backend, metrics);
+            case OPEN -> circuitGate.tryHalfOpen(backend);
+            case HALF_OPEN -> false;
+        };
     }
 
-    private CircuitState determineState(CircuitState currentState, CircuitData data, BackendMetrics metrics) {
-        Instant now = Instant.now();
-
-        switch (currentState) {
-            case CLOSED:
-                return evaluateClosed(data, metrics);
-
-            case OPEN:
-                return evaluateOpen(data, now);
-
-            case HALF_OPEN:
-                return evaluateHalfOpen(data, metrics);
-
-            default:
-                return CircuitState.CLOSED;
-        }
+    /**
+     * True if a failure streak alone is enough to open a closed circuit.
+     */
+    public boolean isStreakTripped(int consecutiveFailures) {
+        return consecutiveFailures >= failureThreshold;
     }
 
-    private CircuitState evaluateClosed(CircuitData data, BackendMetrics metrics) {
-        double errorRate = metrics.getErrorRate();
-        double timeoutRate = metrics.getTimeoutRate();
-        long errorCount = metrics.getErrorCount().sum();
-
-        if (timeoutRate >= timeoutRateThreshold && errorCount >= failureThreshold) {
-            return CircuitState.OPEN;
-        }
-
-        if (errorRate >= 50.0 && errorCount >= failureThreshold) {
-            return CircuitState.OPEN;
-        }
-
-        return CircuitState.CLOSED;
+    /**
+     * Opens a closed circuit for an outlier ejection lasting {@code durationNanos}. Returns true
+     * if the circuit was opened.
+     */
+    public boolean eject(Backend backend, String reason, long durationNanos) {
+        return circuitGate.open(backend, reason, durationNanos);
     }
 
-    private CircuitState evaluateOpen(CircuitData data, Instant now) {
-        long secondsSinceTransition = now.getEpochSecond() - data.lastTransition.getEpochSecond();
-
-        if (secondsSinceTransition >= retryDelay) {
-            data.probeAttempts = 0;
-            return CircuitState.HALF_OPEN;
-        }
-
-        return CircuitState.OPEN;
+    public int getFailureThreshold() {
+        return failureThreshold;
     }
 
-    private CircuitState evaluateHalfOpen(CircuitData data, BackendMetrics metrics) {
+    private boolean evaluateClosed(Backend backend, BackendMetricsSnapshot metrics) {
         double errorRate = metrics.getErrorRate();
-        long requestCount = metrics.getRequestCount().sum();
-
-        data.probeAttempts++;
+        double timeoutRate = metrics.getTimeoutRate();
+        long errorCount = metrics.getErrorCount();
 
-        if (errorRate <= 5.0 && requestCount >= 5) {
-            return CircuitState.CLOSED;
+        if (isStreakTripped(metrics.getConsecutiveFailures())) {
+            return circuitGate.open(backend, "consecutive failures");
         }
 
-        if (errorRate >= 25.0 || data.probeAttempts >= 3) {
-            return CircuitState.OPEN;
+        if (timeoutRate >= timeoutRateThreshold && errorCount >= failureThreshold) {
+            return circuitGate.open(backend, "timeout rate");
         }
 
-        return CircuitState.HALF_OPEN;
-    }
+        if (errorRate >= 50.0 && errorCount >= failureThreshold) {
+            return circuitGate.open(backend, "error rate");
+        }
 
-    private static class CircuitData {
-        int probeAttempts = 0;
-        Instant lastTransition = Instant.now();
+        return false;
     }
 }
@@ -2,6 +2,8 @@ package com.sentinel.control;
 
 import com.sentinel.metrics.MetricsRegistry;
 import com.sentinel.proxy.BackendPool;
+import com.sentinel.proxy.RequestCoalescer;
+import com.sentinel.proxy.ResponseCache;
 import com.sentinel.websocket.MetricsBroadcaster;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -22,8 +24,11 @@ public class ControlLoop {
     private final ModeStateMachine modeStateMachine;
     private final WeightAdjuster weightAdjuster;
     private final CircuitBreaker circuitBreaker;
+    private final OutlierDetector outlierDetector;
     private final OverloadDetector overloadDetector;
     private final MetricsBroadcaster metricsBroadcaster;
+    private final ResponseCache responseCache;
+    private final RequestCoalescer requestCoalescer;
 
     private volatile Instant lastExecution;
 
@@ -38,35 +43,44 @@ public class ControlLoop {
                 return;
             }
 
-            var healthAssessments = healthScorer.scoreAllBackends(backends, metricsRegistry);
+            var snapshots = metricsRegistry.snapshotAll();
+
+            var healthAssessments = healthScorer.scoreAllBackends(backends, snapshots);
 
             if (healthAssessments.isEmpty()) {
                 log.warn("No health assessments available yet for {} backends, broadcasting anyway", backends.size());
-                metricsBroadcaster.broadcastMetrics(backends, healthAssessments,
+                metricsBroadcaster.broadcastMetrics(backends, healthAssessments, snapshots,
                     com.sentinel.model.SystemMode.STABLE,
                     RiskLevel.LOW,
                     OverloadDetector.OverloadType.NONE);
                 return;
             }
 
-            var riskLevel = riskPredictor.predictRisk(healthAssessments, metricsRegistry);
+            var riskLevel = riskPredictor.predictRisk(healthAssessments, snapshots);
 
-            var overloadType = overloadDetector.detectOverloadType(backends, healthAssessments, metricsRegistry);
+            var overloadType = overloadDetector.detectOverloadType(backends, healthAssessments, snapshots);
+            requestCoalescer.setTrafficSpike(overloadType == OverloadDetector.OverloadType.TRAFFIC_SPIKE);
 
             var systemMode = modeStateMachine.determineMode(healthAssessments, riskLevel);
+            responseCache.setSystemMode(systemMode);
 
             backends.forEach(backend -> {
-                metricsRegistry.get(backend.getId()).ifPresent(metrics -> {
-                    circuitBreaker.evaluateAndUpdate(backend, metrics);
-                });
+                var snapshot = snapshots.get(backend.getId());
+                if (snapshot != null) {
+                    circuitBreaker.evaluateAndUpdate(backend, snapshot);
+                }
             });
 
-            weightAdjuster.adjustWeights(backends, healthAssessments, systemMode, backendPool, overloadType);
+            var outliers = outlierDetector.detect(backends, snapshots);
+
+            weightAdjuster.adjustWeights(backends, healthAssessments, systemMode, backendPool, overloadType, outliers);
+
+            backendPool.refreshRoutingTable();
 
-            metricsBroadcaster.broadcastMetrics(backends, healthAssessments, systemMode, riskLevel, overloadType);
+            metricsBroadcaster.broadcastMetrics(backends, healthAssessments, snapshots, systemMode, riskLevel, overloadType);
 
-            log.info("Control loop executed: mode={}, risk={}, overload={}, backends={}, assessed={}",
-                    systemMode, riskLevel, overloadType, backends.size(), healthAssessments.size());
+            log.info("Control loop executed: mode={}, risk={}, overload={}, backends={}, assessed={}, outliers={}",
+                    systemMode, riskLevel, overloadType, backends.size(), healthAssessments.size(), outliers.size());
 
         } catch (Exception e) {
             log.error("Control loop execution failed", e);
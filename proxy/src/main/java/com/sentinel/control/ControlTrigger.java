@@ -0,0 +1,147 @@
+package com.sentinel.control;
+
+import com.sentinel.metrics.BackendMetrics;
+import com.sentinel.metrics.FailureListener;
+import com.sentinel.metrics.MetricsRegistry;
+import com.sentinel.model.Backend;
+import com.sentinel.model.CircuitState;
+import com.sentinel.proxy.BackendPool;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Event-driven path alongside the periodic {@link ControlLoop}: when a backend's failure streak
+ * reaches the circuit breaker's threshold, its circuit is evaluated right away instead of at the
+ * next tick. Signals fire once per streak crossing, are coalesced onto a single evaluation thread,
+ * and each backend is evaluated at most once per debounce interval. Connection-failure streaks do
+ * not come through here; they trip inline in {@link com.sentinel.proxy.CircuitGate}.
+ */
+@Slf4j
+@Component
+public class ControlTrigger implements FailureListener {
+
+    private final boolean enabled;
+    private final long debounceNanos;
+    private final MetricsRegistry metricsRegistry;
+    private final BackendPool backendPool;
+    private final CircuitBreaker circuitBreaker;
+    private final ScheduledExecutorService executor;
+
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Map<String, Long> lastEvaluation = new HashMap<>();
+
+    public ControlTrigger(
+            @Value("${sentinel.control.trigger.enabled:true}") boolean enabled,
+            @Value("${sentinel.control.trigger.debounce:1000}") long debounceMs,
+            MetricsRegistry metricsRegistry,
+            BackendPool backendPool,
+            CircuitBreaker circuitBreaker) {
+        this.enabled = enabled;
+        this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMs);
+        this.metricsRegistry = metricsRegistry;
+        this.backendPool = backendPool;
+        this.circuitBreaker = circuitBreaker;
+        this.executor = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("control-trigger")
+                .daemon(true)
+                .factory());
+
+        log.info("ControlTrigger enabled={}, debounce={}ms, failureThreshold={}",
+                enabled, debounceMs, circuitBreaker.getFailureThreshold());
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            metricsRegistry.setFailureListener(this);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        metricsRegistry.setFailureListener(FailureListener.NONE);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Runs on the request (or ingestion) thread. Streak values come from atomic increments, so
+     * the threshold value is observed by exactly one failure and the signal fires once per streak.
+     */
+    @Override
+    public void onFailure(BackendMetrics metrics, int consecutiveFailures) {
+        if (consecutiveFailures != circuitBreaker.getFailureThreshold()) {
+            return;
+        }
+
+        pending.add(metrics.getBackendId());
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(this::evaluatePending);
+        }
+    }
+
+    /**
+     * Drops the state of a removed backend, so a backend that later reuses its id starts without
+     * a debounce window.
+     */
+    public void remove(String backendId) {
+        pending.remove(backendId);
+        executor.execute(() -> lastEvaluation.remove(backendId));
+    }
+
+    private void evaluatePending() {
+        scheduled.set(false);
+        long now = System.nanoTime();
+        long nextDue = Long.MAX_VALUE;
+        // Evaluations older than the debounce interval no longer hold anything back.
+        lastEvaluation.values().removeIf(last -> now - last >= debounceNanos);
+
+        Iterator<String> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            String backendId = iterator.next();
+            Long last = lastEvaluation.get(backendId);
+            if (last != null && now - last < debounceNanos) {
+                nextDue = Math.min(nextDue, last + debounceNanos - now);
+                continue;
+            }
+
+            iterator.remove();
+            lastEvaluation.put(backendId, now);
+            evaluate(backendId);
+        }
+
+        if (nextDue != Long.MAX_VALUE && scheduled.compareAndSet(false, true)) {
+            executor.schedule(this::evaluatePending, nextDue, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void evaluate(String backendId) {
+        try {
+            Backend backend = backendPool.getBackend(backendId).orElse(null);
+            BackendMetrics metrics = metricsRegistry.get(backendId).orElse(null);
+            if (backend == null || metrics == null || backend.getCircuitState() != CircuitState.CLOSED) {
+                return;
+            }
+
+            if (circuitBreaker.evaluateAndUpdate(backend, metrics.snapshot())) {
+                log.warn("Early circuit evaluation for {}: {} consecutive failures, circuit now {}",
+                        backendId, metrics.getConsecutiveFailures(), backend.getCircuitState());
+            }
+        } catch (RuntimeException e) {
+            log.error("Early circuit evaluation for {} failed", backendId, e);
+        }
+    }
+}
@@ -1,17 +1,20 @@
 package com.sentinel.control;
 
-import com.sentinel.metrics.BackendMetrics;
-import com.sentinel.metrics.MetricsRegistry;
+import com.sentinel.metrics.BackendMetricsSnapshot;
 import com.sentinel.model.Backend;
 import com.sentinel.model.BackendHealth;
 import com.sentinel.model.BackendState;
+import com.sentinel.proxy.ConcurrencyLimiter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component
@@ -24,6 +27,8 @@ public class HealthScorer {
     private final double varianceUnstableMultiplier;
     private final double saturationWarning;
     private final double saturationCritical;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final int parallelThreshold;
 
     public HealthScorer(
             @Value("${sentinel.control.health.latencyDegradedMultiplier:1.5}") double latencyDegradedMultiplier,
@@ -32,7 +37,9 @@ public class HealthScorer {
             @Value("${sentinel.control.health.errorRateCritical:15.0}") double errorRateCritical,
             @Value("${sentinel.control.health.varianceUnstableMultiplier:2.0}") double varianceUnstableMultiplier,
             @Value("${sentinel.control.health.saturationWarning:70.0}") double saturationWarning,
-            @Value("${sentinel.control.health.saturationCritical:90.0}") double saturationCritical) {
+            @Value("${sentinel.control.health.saturationCritical:90.0}") double saturationCritical,
+            @Value("${sentinel.control.parallelThreshold:256}") int parallelThreshold,
+            ConcurrencyLimiter concurrencyLimiter) {
         this.latencyDegradedMultiplier = latencyDegradedMultiplier;
         this.latencyUnhealthyMultiplier = latencyUnhealthyMultiplier;
         this.errorRateWarning = errorRateWarning;
@@ -40,30 +47,48 @@ public class HealthScorer {
         this.varianceUnstableMultiplier = varianceUnstableMultiplier;
         this.saturationWarning = saturationWarning;
         this.saturationCritical = saturationCritical;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.parallelThreshold = parallelThreshold;
     }
 
-    public Map<String, BackendHealth> scoreAllBackends(List<Backend> backends, MetricsRegistry registry) {
-        Map<String, BackendHealth> healthMap = new HashMap<>();
-
-        double avgP95 = calculateAverageP95(backends, registry);
+    /**
+     * Scores every backend against the fleet's reference p95. Each score depends only on its own
+     * snapshot and the reference, so from {@code parallelThreshold} backends on the scoring is
+     * split across the common fork-join pool.
+     */
+    public Map<String, BackendHealth> scoreAllBackends(List<Backend> backends,
+                                                       Map<String, BackendMetricsSnapshot> snapshots) {
+        double referenceP95 = calculateReferenceP95(backends, snapshots);
+
+        if (backends.size() >= parallelThreshold) {
+            return backends.parallelStream()
+                    .map(backend -> {
+                        BackendMetricsSnapshot metrics = snapshots.get(backend.getId());
+                        return metrics == null ? null : scoreBackend(backend, metrics, referenceP95);
+                    })
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toMap(BackendHealth::getBackendId, health -> health));
+        }
 
+        Map<String, BackendHealth> healthMap = new HashMap<>();
         for (Backend backend : backends) {
-            var metrics = registry.get(backend.getId());
-            if (metrics.isEmpty()) {
+            BackendMetricsSnapshot metrics = snapshots.get(backend.getId());
+            if (metrics == null) {
                 continue;
             }
 
-            BackendHealth health = scoreBackend(backend, metrics.get(), avgP95);
+            BackendHealth health = scoreBackend(backend, metrics, referenceP95);
             healthMap.put(backend.getId(), health);
         }
 
         return healthMap;
     }
 
-    private BackendHealth scoreBackend(Backend backend, BackendMetrics metrics, double avgP95) {
-        double speedScore = calculateSpeedScore(metrics, avgP95);
+    private BackendHealth scoreBackend(Backend backend, BackendMetricsSnapshot metrics, double referenceP95) {
+        double speedScore = calculateSpeedScore(metrics, referenceP95);
         double stabilityScore = calculateStabilityScore(metrics);
-        double saturationScore = calculateSaturationScore(metrics);
+        double saturationPercent = calculateSaturationPercent(metrics);
+        double saturationScore = calculateSaturationScore(saturationPercent);
         double reliabilityScore = calculateReliabilityScore(metrics);
 
         double overallScore = BackendHealth.calculateOverallScore(
@@ -76,7 +101,7 @@ public class HealthScorer {
 
         boolean latencyIncreasing = metrics.getLatencyTrend() > metrics.getP95Latency();
         boolean errorsIncreasing = metrics.getErrorRateTrend() > metrics.getErrorRate();
-        boolean saturationIncreasing = metrics.getInflightCount() > 0;
+        boolean saturationIncreasing = saturationPercent > saturationWarning;
 
         return BackendHealth.builder()
                 .backendId(backend.getId())
@@ -92,21 +117,21 @@ public class HealthScorer {
                 .build();
     }
 
-    private double calculateSpeedScore(BackendMetrics metrics, double avgP95) {
-        long p95 = metrics.getP95Latency();
+    private double calculateSpeedScore(BackendMetricsSnapshot metrics, double referenceP95) {
+        double p95 = metrics.getP95Latency();
 
         if (p95 == 0) {
             log.debug("Backend {} has p95=0, returning degraded score", metrics.getBackendId());
             return 30.0;
         }
 
-        if (avgP95 == 0) {
+        if (referenceP95 == 0) {
             return 100.0;
         }
 
-        double ratio = p95 / avgP95;
-        log.debug("Backend {}: p95={}ms, avgP95={}ms, ratio={}",
-                  metrics.getBackendId(), p95, avgP95, ratio);
+        double ratio = p95 / referenceP95;
+        log.debug("Backend {}: p95={}ms, referenceP95={}ms, ratio={}",
+                  metrics.getBackendId(), p95, referenceP95, ratio);
 
         if (ratio <= 1.0) {
             return 100.0;
@@ -119,7 +144,7 @@ public class HealthScorer {
         }
     }
 
-    private double calculateStabilityScore(BackendMetrics metrics) {
+    private double calculateStabilityScore(BackendMetricsSnapshot metrics) {
         double variance = metrics.getLatencyVariance();
 
         if (variance <= 0.5) {
@@ -131,16 +156,15 @@ public class HealthScorer {
         }
     }
 
-    private double calculateSaturationScore(BackendMetrics metrics) {
-        long inflight = metrics.getInflightCount();
-        long rps = metrics.getRequestsPerSecond();
+    private double calculateSaturationPercent(BackendMetricsSnapshot metrics) {
+        double observed = metrics.getSaturationPercent();
 
-        if (rps == 0) {
-            return 100.0;
-        }
-
-        double saturationPercent = (inflight * 100.0) / Math.max(rps, 1);
+        return concurrencyLimiter.getLimit(metrics.getBackendId())
+                .map(limit -> Math.max(observed, limit.getUtilizationPercent()))
+                .orElse(observed);
+    }
 
+    private double calculateSaturationScore(double saturationPercent) {
         if (saturationPercent <= saturationWarning) {
             return 100.0;
         } else if (saturationPercent <= saturationCritical) {
@@ -150,7 +174,7 @@ public class HealthScorer {
         }
     }
 
-    private double calculateReliabilityScore(BackendMetrics metrics) {
+    private double calculateReliabilityScore(BackendMetricsSnapshot metrics) {
         double errorRate = metrics.getErrorRate();
 
         if (errorRate <= errorRateWarning) {
@@ -162,7 +186,7 @@ public class HealthScorer {
         }
     }
 
-    private BackendState deriveState(double overallScore, BackendMetrics metrics) {
+    private BackendState deriveState(double overallScore, BackendMetricsSnapshot metrics) {
         if (overallScore >= 75.0) {
             return BackendState.HEALTHY;
         } else if (overallScore >= 40.0) {
@@ -172,7 +196,7 @@ public class HealthScorer {
         }
     }
 
-    private BackendState deriveStateWithRecovery(Backend backend, double overallScore, BackendMetrics metrics) {
+    private BackendState deriveStateWithRecovery(Backend backend, double overallScore, BackendMetricsSnapshot metrics) {
         var circuitState = backend.getCircuitState();
 
         if (circuitState == com.sentinel.model.CircuitState.HALF_OPEN) {
@@ -182,13 +206,19 @@ public class HealthScorer {
         return deriveState(overallScore, metrics);
     }
 
-    private double calculateAverageP95(List<Backend> backends, MetricsRegistry registry) {
-        return backends.stream()
-                .map(b -> registry.get(b.getId()))
-                .filter(opt -> opt.isPresent())
-                .mapToLong(opt -> opt.get().getP95Latency())
-                .filter(p95 -> p95 > 0)
-                .average()
-                .orElse(100.0);
+    /**
+     * Lower median of the fleet's p95s. A mean would be pulled up by the slowest backends until,
+     * with half the fleet slow, none of them looks slow.
+     */
+    private double calculateReferenceP95(List<Backend> backends, Map<String, BackendMetricsSnapshot> snapshots) {
+        double[] p95s = new double[backends.size()];
+        int count = 0;
+        for (Backend backend : backends) {
+            BackendMetricsSnapshot snapshot = snapshots.get(backend.getId());
+            if (snapshot != null && snapshot.getP95Latency() > 0) {
+                p95s[count++] = snapshot.getP95Latency();
+            }
+        }
+        return count == 0 ? 100.0 : RobustStatistics.lowerMedian(Arrays.copyOf(p95s, count));
     }
 }
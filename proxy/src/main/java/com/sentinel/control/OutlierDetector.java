@@ -0,0 +1,238 @@
+package com.sentinel.control;
+
+import com.sentinel.metrics.BackendMetricsSnapshot;
+import com.sentinel.model.Backend;
+import com.sentinel.model.CircuitState;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds backends that stand out from the rest of the fleet. Each signal is compared against the
+ * fleet's lower median plus {@code madMultiplier} scaled median absolute deviations, with a floor
+ * on the spread so a tight fleet does not flag noise. Error-rate outliers are ejected through the
+ * circuit breaker for an ejection time that doubles with each repeat ejection; latency outliers
+ * are handed to the weight adjuster. Ejections never take more than {@code maxEjectionPercent} of
+ * the fleet out of rotation.
+ */
+@Slf4j
+@Component
+public class OutlierDetector {
+
+    public enum Kind {
+        ERROR_RATE,
+        LATENCY
+    }
+
+    /**
+     * @param value     the backend's error rate (percent) or p95 latency (ms)
+     * @param threshold the fleet threshold the value exceeded
+     * @param ejected   true if this evaluation opened the backend's circuit
+     */
+    public record Outlier(Kind kind, double value, double threshold, boolean ejected) {
+    }
+
+    private final boolean enabled;
+    private final int minHosts;
+    private final long minRequests;
+    private final double madMultiplier;
+    private final double minErrorRateSpread;
+    private final double minLatencySpread;
+    private final int maxEjectionPercent;
+    private final long baseEjectionNanos;
+    private final long maxEjectionNanos;
+    private final CircuitBreaker circuitBreaker;
+
+    // Indexed by backend pool index; only touched from the control loop thread.
+    private EjectionHistory[] histories = new EjectionHistory[0];
+
+    public OutlierDetector(
+            @Value("${sentinel.control.outlier.enabled:true}") boolean enabled,
+            @Value("${sentinel.control.outlier.minHosts:3}") int minHosts,
+            @Value("${sentinel.control.outlier.minRequests:50}") long minRequests,
+            @Value("${sentinel.control.outlier.madMultiplier:3.0}") double madMultiplier,
+            @Value("${sentinel.control.outlier.minErrorRateSpread:5.0}") double minErrorRateSpread,
+            @Value("${sentinel.control.outlier.minLatencySpread:0.25}") double minLatencySpread,
+            @Value("${sentinel.control.outlier.maxEjectionPercent:50}") int maxEjectionPercent,
+            @Value("${sentinel.control.outlier.baseEjectionTime:30}") int baseEjectionSeconds,
+            @Value("${sentinel.control.outlier.maxEjectionTime:300}") int maxEjectionSeconds,
+            CircuitBreaker circuitBreaker) {
+        this.enabled = enabled;
+        this.minHosts = minHosts;
+        this.minRequests = minRequests;
+        this.madMultiplier = madMultiplier;
+        this.minErrorRateSpread = minErrorRateSpread;
+        this.minLatencySpread = minLatencySpread;
+        this.maxEjectionPercent = maxEjectionPercent;
+        this.baseEjectionNanos = TimeUnit.SECONDS.toNanos(baseEjectionSeconds);
+        this.maxEjectionNanos = TimeUnit.SECONDS.toNanos(maxEjectionSeconds);
+        this.circuitBreaker = circuitBreaker;
+
+        log.info("OutlierDetector enabled={}, minHosts={}, minRequests={}, madMultiplier={}, maxEjectionPercent={}, "
+                        + "baseEjectionTime={}s, maxEjectionTime={}s",
+                enabled, minHosts, minRequests, madMultiplier, maxEjectionPercent,
+                baseEjectionSeconds, maxEjectionSeconds);
+    }
+
+    /**
+     * Scores the closed backends that have enough traffic and ejects error-rate outliers while
+     * the ejection cap allows. Returns the outliers found, keyed by backend id.
+     */
+    public Map<String, Outlier> detect(List<Backend> backends, Map<String, BackendMetricsSnapshot> snapshots) {
+        if (!enabled) {
+            return Collections.emptyMap();
+        }
+
+        long now = System.nanoTime();
+        List<Backend> candidates = new ArrayList<>(backends.size());
+        for (Backend backend : backends) {
+            BackendMetricsSnapshot snapshot = snapshots.get(backend.getId());
+            if (backend.getCircuitState() == CircuitState.CLOSED
+                    && snapshot != null && snapshot.getRequestCount() >= minRequests) {
+                candidates.add(backend);
+            }
+        }
+
+        if (candidates.size() < minHosts) {
+            decayHistories(backends, Collections.emptyMap(), now);
+            return Collections.emptyMap();
+        }
+
+        double[] errorRates = new double[candidates.size()];
+        double[] latencies = new double[candidates.size()];
+        for (int i = 0; i < candidates.size(); i++) {
+            BackendMetricsSnapshot snapshot = snapshots.get(candidates.get(i).getId());
+            errorRates[i] = snapshot.getErrorRate();
+            latencies[i] = snapshot.getP95Latency();
+        }
+
+        double errorRateThreshold = threshold(errorRates, minErrorRateSpread);
+        double latencyMedian = RobustStatistics.lowerMedian(latencies.clone());
+        double latencyThreshold = threshold(latencies, latencyMedian * minLatencySpread);
+
+        int ejectable = ejectionCapacity(backends);
+        Map<String, Outlier> outliers = new HashMap<>();
+
+        for (Backend backend : candidates) {
+            BackendMetricsSnapshot snapshot = snapshots.get(backend.getId());
+
+            if (snapshot.getErrorRate() > errorRateThreshold) {
+                boolean ejected = ejectable > 0 && eject(backend, snapshot.getErrorRate(), errorRateThreshold, now);
+                if (ejected) {
+                    ejectable--;
+                }
+                outliers.put(backend.getId(),
+                        new Outlier(Kind.ERROR_RATE, snapshot.getErrorRate(), errorRateThreshold, ejected));
+            } else if (latencyMedian > 0 && snapshot.getP95Latency() > latencyThreshold) {
+                outliers.put(backend.getId(),
+                        new Outlier(Kind.LATENCY, snapshot.getP95Latency(), latencyThreshold, false));
+                log.info("Latency outlier: backend={}, p95={}ms, threshold={}ms",
+                        backend.getId(), snapshot.getP95Latency(), latencyThreshold);
+            }
+        }
+
+        decayHistories(backends, outliers, now);
+        return outliers;
+    }
+
+    /**
+     * Lower median plus {@code madMultiplier} scaled MADs, with the spread floored at
+     * {@code minSpread}. Sorts {@code values} in place.
+     */
+    private double threshold(double[] values, double minSpread) {
+        double median = RobustStatistics.lowerMedian(values);
+        double spread = Math.max(RobustStatistics.scaledMad(values, median), minSpread);
+        return median + madMultiplier * spread;
+    }
+
+    /**
+     * How many more backends may be taken out of rotation. Every circuit that is not closed
+     * counts against the cap, whatever opened it, and the cap always allows at least one.
+     */
+    private int ejectionCapacity(List<Backend> backends) {
+        int open = 0;
+        for (Backend backend : backends) {
+            if (backend.getCircuitState() != CircuitState.CLOSED) {
+                open++;
+            }
+        }
+        int allowed = Math.max(1, backends.size() * maxEjectionPercent / 100);
+        return allowed - open;
+    }
+
+    private boolean eject(Backend backend, double errorRate, double threshold, long now) {
+        int index = backend.getIndex();
+        if (index < 0) {
+            return false;
+        }
+        if (index >= histories.length) {
+            histories = Arrays.copyOf(histories, Math.max(index + 1, histories.length * 2));
+        }
+        EjectionHistory history = histories[index];
+        if (history == null || history.backend != backend) {
+            history = new EjectionHistory(backend);
+            histories[index] = history;
+        }
+        long duration = ejectionTime(history.ejections);
+
+        String reason = String.format("outlier, error rate %.1f%% > %.1f%%", errorRate, threshold);
+        if (!circuitBreaker.eject(backend, reason, duration)) {
+            return false;
+        }
+
+        history.ejections++;
+        history.lastChangeNanos = now;
+        log.warn("Ejected outlier: backend={}, errorRate={}%, threshold={}%, ejection={}s, ejections={}",
+                backend.getId(), errorRate, threshold, TimeUnit.NANOSECONDS.toSeconds(duration), history.ejections);
+        return true;
+    }
+
+    private long ejectionTime(int previousEjections) {
+        long duration = baseEjectionNanos;
+        for (int i = 0; i < previousEjections && duration < maxEjectionNanos; i++) {
+            duration *= 2;
+        }
+        return Math.min(duration, maxEjectionNanos);
+    }
+
+    /**
+     * Backoff decays by one step for every base ejection time a backend stays closed without
+     * being flagged, so a backend that recovered for good returns to the base ejection time.
+     */
+    private void decayHistories(List<Backend> backends, Map<String, Outlier> outliers, long now) {
+        for (Backend backend : backends) {
+            int index = backend.getIndex();
+            EjectionHistory history = index >= 0 && index < histories.length ? histories[index] : null;
+            if (history == null || history.backend != backend) {
+                continue;
+            }
+
+            if (backend.getCircuitState() != CircuitState.CLOSED || outliers.containsKey(backend.getId())) {
+                history.lastChangeNanos = now;
+            } else if (now - history.lastChangeNanos >= baseEjectionNanos) {
+                history.lastChangeNanos = now;
+                if (--history.ejections == 0) {
+                    histories[index] = null;
+                }
+            }
+        }
+    }
+
+    private static final class EjectionHistory {
+        final Backend backend;
+        int ejections;
+        long lastChangeNanos;
+
+        EjectionHistory(Backend backend) {
+            this.backend = backend;
+        }
+    }
+}
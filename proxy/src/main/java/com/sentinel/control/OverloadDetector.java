@@ -1,7 +1,6 @@
 package com.sentinel.control;
 
-import com.sentinel.metrics.BackendMetrics;
-import com.sentinel.metrics.MetricsRegistry;
+import com.sentinel.metrics.BackendMetricsSnapshot;
 import com.sentinel.model.Backend;
 import com.sentinel.model.BackendHealth;
 import lombok.Getter;
@@ -21,19 +20,21 @@ public class OverloadDetector {
 
     public OverloadType detectOverloadType(List<Backend> backends, 
                                           Map<String, BackendHealth> healthAssessments,
-                                          MetricsRegistry registry) {
+                                          Map<String, BackendMetricsSnapshot> snapshots) {
         
-        long currentSystemRps = calculateSystemRps(backends, registry);
+        long currentSystemRps = calculateSystemRps(backends, snapshots);
         double rpsGrowthPercent = calculateRpsGrowth(currentSystemRps);
         
-        double avgHealthScore = healthAssessments.values().stream()
-                .mapToDouble(h -> h.getOverallScore())
-                .average()
-                .orElse(100.0);
-        
-        long degradedCount = healthAssessments.values().stream()
-                .filter(h -> h.getOverallScore() < 70.0)
-                .count();
+        double totalHealthScore = 0;
+        long degradedCount = 0;
+        for (BackendHealth health : healthAssessments.values()) {
+            totalHealthScore += health.getOverallScore();
+            if (health.getOverallScore() < 70.0) {
+                degradedCount++;
+            }
+        }
+        double avgHealthScore = healthAssessments.isEmpty() ? 100.0
+                : totalHealthScore / healthAssessments.size();
         
         double degradedPercent = healthAssessments.isEmpty() ? 0.0 
                 : (double) degradedCount / healthAssessments.size() * 100;
@@ -64,12 +65,15 @@ public class OverloadDetector {
         return OverloadType.NONE;
     }
 
-    private long calculateSystemRps(List<Backend> backends, MetricsRegistry registry) {
-        return backends.stream()
-                .mapToLong(b -> registry.get(b.getId())
-                        .map(BackendMetrics::getRequestsPerSecond)
-                        .orElse(0L))
-                .sum();
+    private long calculateSystemRps(List<Backend> backends, Map<String, BackendMetricsSnapshot> snapshots) {
+        double total = 0;
+        for (Backend backend : backends) {
+            BackendMetricsSnapshot snapshot = snapshots.get(backend.getId());
+            if (snapshot != null) {
+                total += snapshot.getRequestsPerSecond();
+            }
+        }
+        return (long) total;
     }
 
     private double calculateRpsGrowth(long currentRps) {
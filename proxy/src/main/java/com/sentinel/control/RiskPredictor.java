@@ -1,7 +1,6 @@
 package com.sentinel.control;
 
-import com.sentinel.metrics.BackendMetrics;
-import com.sentinel.metrics.MetricsRegistry;
+import com.sentinel.metrics.BackendMetricsSnapshot;
 import com.sentinel.model.BackendHealth;
 import com.sentinel.model.BackendState;
 import lombok.extern.slf4j.Slf4j;
@@ -9,7 +8,6 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.util.Map;
-import java.util.stream.Collectors;
 
 @Slf4j
 @Component
@@ -23,41 +21,46 @@ public class RiskPredictor {
         this.maxDegradedPercent = maxDegradedPercent;
     }
 
-    public RiskLevel predictRisk(Map<String, BackendHealth> healthAssessments, MetricsRegistry registry) {
+    public RiskLevel predictRisk(Map<String, BackendHealth> healthAssessments,
+                                 Map<String, BackendMetricsSnapshot> snapshots) {
         if (healthAssessments.isEmpty()) {
             return RiskLevel.LOW;
         }
 
-        Map<String, BackendHealth> validBackends = healthAssessments.entrySet().stream()
-                .filter(e -> hasSufficientMetrics(e.getKey(), registry))
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        int validCount = 0;
+        long degradedCount = 0;
+        long unhealthyCount = 0;
+        long trendingWorse = 0;
+        for (BackendHealth health : healthAssessments.values()) {
+            if (!hasSufficientMetrics(snapshots.get(health.getBackendId()))) {
+                continue;
+            }
+
+            validCount++;
+            if (health.getState() == BackendState.DEGRADING || health.getState() == BackendState.UNHEALTHY) {
+                degradedCount++;
+            }
+            if (health.getState() == BackendState.UNHEALTHY) {
+                unhealthyCount++;
+            }
+            if (health.isDegrading()) {
+                trendingWorse++;
+            }
+        }
 
-        if (validBackends.size() < 2) {
+        if (validCount < 2) {
             log.debug("Insufficient backends with metrics for risk evaluation: {}/{}",
-                    validBackends.size(), healthAssessments.size());
+                    validCount, healthAssessments.size());
             return RiskLevel.LOW;
         }
 
-        long degradedCount = validBackends.values().stream()
-                .filter(h -> h.getState() == BackendState.DEGRADING ||
-                             h.getState() == BackendState.UNHEALTHY)
-                .count();
-
-        long unhealthyCount = validBackends.values().stream()
-                .filter(h -> h.getState() == BackendState.UNHEALTHY)
-                .count();
-
-        long trendingWorse = validBackends.values().stream()
-                .filter(BackendHealth::isDegrading)
-                .count();
-
-        double degradedRatio = (double) degradedCount / validBackends.size();
-        double unhealthyRatio = (double) unhealthyCount / validBackends.size();
-        double trendingRatio = (double) trendingWorse / validBackends.size();
+        double degradedRatio = (double) degradedCount / validCount;
+        double unhealthyRatio = (double) unhealthyCount / validCount;
+        double trendingRatio = (double) trendingWorse / validCount;
 
         if (degradedRatio > maxDegradedPercent) {
             log.warn("Too many backends degraded ({}/{}={}%), limiting risk to MEDIUM for capacity protection",
-                    degradedCount, validBackends.size(), String.format("%.0f", degradedRatio * 100));
+                    degradedCount, validCount, String.format("%.0f", degradedRatio * 100));
             return RiskLevel.MEDIUM;
         }
 
@@ -76,11 +79,8 @@ public class RiskPredictor {
         return RiskLevel.LOW;
     }
 
-    private boolean hasSufficientMetrics(String backendId, MetricsRegistry registry) {
-        return registry.get(backendId)
-                .map(BackendMetrics::getRequestCount)
-                .map(rw -> rw.sum() >= MIN_REQUESTS_FOR_EVALUATION)
-                .orElse(false);
+    private boolean hasSufficientMetrics(BackendMetricsSnapshot snapshot) {
+        return snapshot != null && snapshot.getRequestCount() >= MIN_REQUESTS_FOR_EVALUATION;
     }
 }
 
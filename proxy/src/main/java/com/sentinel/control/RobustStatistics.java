@@ -0,0 +1,42 @@
+package com.sentinel.control;
+
+import java.util.Arrays;
+
+/**
+ * Order statistics for comparing backends with each other. Unlike the mean, neither the median
+ * nor the median absolute deviation moves when one backend is far off, so a single bad backend
+ * cannot drag the fleet's reference point towards itself.
+ */
+final class RobustStatistics {
+
+    /**
+     * Scales the MAD to be comparable with a standard deviation for normally distributed values.
+     */
+    static final double MAD_SCALE = 1.4826;
+
+    private RobustStatistics() {
+    }
+
+    /**
+     * Lower median: for an even count, the smaller of the two middle values, so a fleet split in
+     * half is judged against its better half. Sorts {@code values} in place.
+     */
+    static double lowerMedian(double[] values) {
+        if (values.length == 0) {
+            return 0.0;
+        }
+        Arrays.sort(values);
+        return values[(values.length - 1) / 2];
+    }
+
+    /**
+     * Lower median of the absolute deviations from {@code median}, scaled by {@link #MAD_SCALE}.
+     */
+    static double scaledMad(double[] values, double median) {
+        double[] deviations = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            deviations[i] = Math.abs(values[i] - median);
+        }
+        return lowerMedian(deviations) * MAD_SCALE;
+    }
+}
@@ -6,12 +6,14 @@ import com.sentinel.model.BackendState;
 import com.sentinel.model.CircuitState;
 import com.sentinel.model.SystemMode;
 import com.sentinel.proxy.BackendPool;
+import com.sentinel.proxy.ConnectionPoolManager;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.time.Instant;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -25,12 +27,12 @@ public class WeightAdjuster {
     private final int cooldownPeriod;
     private final int sustainedDegradationCycles;
     private final int rampUpStepSeconds;
+    private final ConnectionPoolManager connectionPoolManager;
 
-    private final Map<String, Instant> lastAdjustment = new HashMap<>();
-    private final Map<String, Instant> observationStart = new HashMap<>();
-    private final Map<String, Integer> degradationCycleCount = new HashMap<>();
-    private final Map<String, BackendState> lastState = new HashMap<>();
-    private final Map<String, CircuitState> lastCircuitState = new HashMap<>();
+    private static final long NEVER = Long.MIN_VALUE;
+
+    // Indexed by backend pool index; only touched from the control loop thread.
+    private ControlState[] states = new ControlState[0];
 
     public WeightAdjuster(
             @Value("${sentinel.control.maxWeightChangePercent:10}") int maxWeightChangePercent,
@@ -38,109 +40,132 @@ public class WeightAdjuster {
             @Value("${sentinel.control.minObservationPeriod:15}") int minObservationPeriod,
             @Value("${sentinel.control.cooldownPeriod:20}") int cooldownPeriod,
             @Value("${sentinel.control.sustainedDegradationCycles:3}") int sustainedDegradationCycles,
-            @Value("${sentinel.control.rampUpStepSeconds:10}") int rampUpStepSeconds) {
+            @Value("${sentinel.control.rampUpStepSeconds:10}") int rampUpStepSeconds,
+            ConnectionPoolManager connectionPoolManager) {
         this.maxWeightChangePercent = maxWeightChangePercent;
         this.recoveryWeightChangePercent = recoveryWeightChangePercent;
         this.minObservationPeriod = minObservationPeriod;
         this.cooldownPeriod = cooldownPeriod;
         this.sustainedDegradationCycles = sustainedDegradationCycles;
         this.rampUpStepSeconds = rampUpStepSeconds;
+        this.connectionPoolManager = connectionPoolManager;
     }
 
     public void adjustWeights(List<Backend> backends, Map<String, BackendHealth> healthAssessments,
                              SystemMode systemMode, BackendPool pool) {
-        adjustWeights(backends, healthAssessments, systemMode, pool, OverloadDetector.OverloadType.NONE);
+        adjustWeights(backends, healthAssessments, systemMode, pool, OverloadDetector.OverloadType.NONE,
+                Collections.emptyMap());
     }
 
+    /**
+     * Outliers found by {@link OutlierDetector} are treated as at least DEGRADING (latency) or
+     * UNHEALTHY (error rate, when the ejection cap kept them in rotation), even if their own
+     * health score looks fine.
+     */
     public void adjustWeights(List<Backend> backends, Map<String, BackendHealth> healthAssessments,
-                             SystemMode systemMode, BackendPool pool, OverloadDetector.OverloadType overloadType) {
+                             SystemMode systemMode, BackendPool pool, OverloadDetector.OverloadType overloadType,
+                             Map<String, OutlierDetector.Outlier> outliers) {
 
-        Instant now = Instant.now();
+        long now = Instant.now().getEpochSecond();
 
         for (Backend backend : backends) {
+            ControlState state = stateFor(backend);
+            if (state == null) {
+                continue;
+            }
+
             BackendHealth health = healthAssessments.get(backend.getId());
             if (health == null) {
-                observationStart.putIfAbsent(backend.getId(), now);
+                if (state.observationStart == NEVER) {
+                    state.observationStart = now;
+                }
                 log.debug("Skipping {}: no health assessment yet", backend.getId());
                 continue;
             }
 
-            handleCircuitStateTransitions(backend);
+            handleCircuitStateTransitions(backend, state);
             handleRampUp(backend, health);
 
-            if (!hasMinObservationPeriod(backend.getId(), now)) {
+            if (!hasMinObservationPeriod(state, now)) {
                 log.debug("Skipping {}: min observation period not met", backend.getId());
                 continue;
             }
 
-            if (isInCooldown(backend.getId(), now)) {
+            if (isInCooldown(state, now)) {
                 log.debug("Skipping {}: in cooldown", backend.getId());
                 continue;
             }
 
-            BackendState currentState = health.getState();
+            BackendState currentState = applyOutlier(health.getState(), outliers.get(backend.getId()));
             boolean isDegraded = (currentState == BackendState.DEGRADING || currentState == BackendState.UNHEALTHY);
 
             if (isDegraded) {
-                int count = degradationCycleCount.getOrDefault(backend.getId(), 0) + 1;
-                degradationCycleCount.put(backend.getId(), count);
-                log.debug("Backend {}: degradation cycle {}/{}", backend.getId(), count, sustainedDegradationCycles);
+                state.degradationCycles++;
+                log.debug("Backend {}: degradation cycle {}/{}", backend.getId(), state.degradationCycles,
+                        sustainedDegradationCycles);
             } else if (currentState == BackendState.HEALTHY) {
-                degradationCycleCount.put(backend.getId(), 0);
+                state.degradationCycles = 0;
             }
-            lastState.put(backend.getId(), currentState);
 
             int currentWeight = backend.getWeight();
-            int newWeight = calculateNewWeight(currentWeight, health, systemMode, overloadType);
+            int newWeight = calculateNewWeight(currentWeight, currentState, systemMode, overloadType);
 
             log.debug("Backend {}: health={}, currentWeight={}, newWeight={}",
-                      backend.getId(), health.getState(), currentWeight, newWeight);
-
-            if (newWeight < currentWeight) {
-                int cycleCount = degradationCycleCount.getOrDefault(backend.getId(), 0);
-                if (cycleCount < sustainedDegradationCycles) {
-                    log.debug("Skipping {}: degradation not sustained ({}/{} cycles)",
-                              backend.getId(), cycleCount, sustainedDegradationCycles);
-                    continue;
-                }
+                      backend.getId(), currentState, currentWeight, newWeight);
+
+            if (newWeight < currentWeight && state.degradationCycles < sustainedDegradationCycles) {
+                log.debug("Skipping {}: degradation not sustained ({}/{} cycles)",
+                          backend.getId(), state.degradationCycles, sustainedDegradationCycles);
+                continue;
             }
 
             if (newWeight != currentWeight) {
-                pool.updateWeight(backend.getId(), newWeight);
-                lastAdjustment.put(backend.getId(), now);
+                // The control loop rebuilds the routing table once after all adjustments.
+                pool.setWeight(backend, newWeight);
+                state.lastAdjustment = now;
                 log.info("Adjusted weight: backend={}, {} -> {}, health={}, mode={}",
                         backend.getId(), currentWeight, newWeight,
-                        health.getState(), systemMode);
+                        currentState, systemMode);
             }
         }
     }
 
-    private int calculateNewWeight(int currentWeight, BackendHealth health, SystemMode mode,
+    private BackendState applyOutlier(BackendState state, OutlierDetector.Outlier outlier) {
+        if (outlier == null || state == BackendState.UNHEALTHY || state == BackendState.RECOVERING) {
+            return state;
+        }
+        if (outlier.kind() == OutlierDetector.Kind.ERROR_RATE) {
+            return BackendState.UNHEALTHY;
+        }
+        return BackendState.DEGRADING;
+    }
+
+    private int calculateNewWeight(int currentWeight, BackendState state, SystemMode mode,
                                    OverloadDetector.OverloadType overloadType) {
-        double targetWeight = switch (health.getState()) {
+        double targetWeight = switch (state) {
             case HEALTHY -> 100.0;
             case DEGRADING -> 70.0;
             case UNHEALTHY -> 30.0;
             case RECOVERING -> 50.0;
         };
 
-        if (mode == SystemMode.OVERLOADED && health.getState() == BackendState.UNHEALTHY) {
+        if (mode == SystemMode.OVERLOADED && state == BackendState.UNHEALTHY) {
             targetWeight = 10.0;
         }
 
-        if (overloadType == OverloadDetector.OverloadType.TRAFFIC_SPIKE && health.getState() == BackendState.HEALTHY) {
+        if (overloadType == OverloadDetector.OverloadType.TRAFFIC_SPIKE && state == BackendState.HEALTHY) {
             targetWeight = 100.0;
         }
 
         if (overloadType == OverloadDetector.OverloadType.COMBINED_OVERLOAD) {
-            if (health.getState() == BackendState.DEGRADING) {
+            if (state == BackendState.DEGRADING) {
                 targetWeight = 50.0;
-            } else if (health.getState() == BackendState.UNHEALTHY) {
+            } else if (state == BackendState.UNHEALTHY) {
                 targetWeight = 5.0;
             }
         }
 
-        int changePercent = health.getState() == BackendState.RECOVERING
+        int changePercent = state == BackendState.RECOVERING
                 ? recoveryWeightChangePercent
                 : maxWeightChangePercent;
 
@@ -159,37 +184,59 @@ public class WeightAdjuster {
         return Math.max(10, Math.min(100, newWeight));
     }
 
-    private boolean hasMinObservationPeriod(String backendId, Instant now) {
-        Instant start = observationStart.get(backendId);
-        if (start == null) {
-            observationStart.put(backendId, now);
+    /**
+     * The control state for {@code backend}, reset when its pool index has been handed to a
+     * different backend. Null if the backend has left the pool.
+     */
+    private ControlState stateFor(Backend backend) {
+        int index = backend.getIndex();
+        if (index < 0) {
+            return null;
+        }
+
+        if (index >= states.length) {
+            states = Arrays.copyOf(states, Math.max(index + 1, states.length * 2));
+        }
+
+        ControlState state = states[index];
+        if (state == null || state.backend != backend) {
+            state = new ControlState(backend);
+            states[index] = state;
+        }
+        return state;
+    }
+
+    private boolean hasMinObservationPeriod(ControlState state, long now) {
+        if (state.observationStart == NEVER) {
+            state.observationStart = now;
             return false;
         }
 
-        return now.getEpochSecond() - start.getEpochSecond() >= minObservationPeriod;
+        return now - state.observationStart >= minObservationPeriod;
     }
 
-    private boolean isInCooldown(String backendId, Instant now) {
-        Instant lastChange = lastAdjustment.get(backendId);
-        if (lastChange == null) {
+    private boolean isInCooldown(ControlState state, long now) {
+        if (state.lastAdjustment == NEVER) {
             return false;
         }
 
-        return now.getEpochSecond() - lastChange.getEpochSecond() < cooldownPeriod;
+        return now - state.lastAdjustment < cooldownPeriod;
     }
 
-    private void handleCircuitStateTransitions(Backend backend) {
+    private void handleCircuitStateTransitions(Backend backend, ControlState state) {
         CircuitState currentCircuit = backend.getCircuitState();
-        CircuitState previousCircuit = lastCircuitState.get(backend.getId());
+        CircuitState previousCircuit = state.lastCircuitState;
 
         if (previousCircuit != null && previousCircuit != currentCircuit) {
-            if (previousCircuit == CircuitState.OPEN && currentCircuit == CircuitState.CLOSED) {
+            // Recovery passes through HALF_OPEN, so any return to CLOSED counts.
+            if (currentCircuit == CircuitState.CLOSED) {
                 backend.startRampUp();
+                connectionPoolManager.prewarm(backend);
                 log.info("Backend {} recovered: starting gradual ramp-up at 5%", backend.getId());
             }
         }
 
-        lastCircuitState.put(backend.getId(), currentCircuit);
+        state.lastCircuitState = currentCircuit;
     }
 
     private void handleRampUp(Backend backend, BackendHealth health) {
@@ -230,4 +277,17 @@ public class WeightAdjuster {
             default -> 100;
         };
     }
+
+    private static final class ControlState {
+        final Backend backend;
+        // Epoch seconds, NEVER until first set.
+        long observationStart = NEVER;
+        long lastAdjustment = NEVER;
+        int degradationCycles;
+        CircuitState lastCircuitState;
+
+        ControlState(Backend backend) {
+            this.backend = backend;
+        }
+    }
 }
@@ -1,58 +1,122 @@
 package com.sentinel.metrics;
 
-import com.sentinel.model.RequestOutcome;
+import lombok.AccessLevel;
 import lombok.Getter;
 
-import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 @Getter
 public class BackendMetrics {
 
+    private static final long MIN_CONCURRENCY_LIMIT = 10;
+    static final long HIGHEST_TRACKABLE_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+    private static final double[] SNAPSHOT_PERCENTILES = {50.0, 95.0, 99.0};
+
     private final String backendId;
+    private final int windowDuration;
     private final RollingWindow requestCount;
     private final RollingWindow errorCount;
     private final RollingWindow timeoutCount;
     private final RollingHistogram latencyHistogram;
+    private final RollingHistogram firstByteHistogram;
     private final EWMACalculator latencyEWMA;
-    private final EWMACalculator errorRateEWMA;
+    private final EWMACalculator poolWaitEWMA;
+    private final DecayingRate errorRateEWMA;
+    private final EWMACalculator connectLatencyEWMA;
+    private final RollingMax peakConcurrency;
     private final AtomicLong inflightRequests = new AtomicLong(0);
-    private volatile Instant lastUpdate;
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    @Getter(AccessLevel.NONE)
+    private volatile FailureListener failureListener = FailureListener.NONE;
+    private volatile int poolInUse;
+    private volatile int poolCapacity;
+    private volatile long lastUpdate;
+    // p95 as of the last snapshot, cheap enough to read on every request
+    private volatile long lastP95LatencyNanos;
 
-    private final long[] latencyBuckets = {
-        5, 10, 15, 20, 25, 30, 40, 50, 60, 70, 80, 90, 100,
-        120, 140, 160, 180, 200, 225, 250, 300,
-        400, 500, 600, 700, 800, 900, 1000, 1200, 1500, 2000, 3000, 5000, 10000
-    };
+    public BackendMetrics(String backendId, int windowDuration, int numBuckets, double ewmaAlpha,
+                          int histogramPrecision) {
+        this(backendId, windowDuration, numBuckets, ewmaAlpha, histogramPrecision, numBuckets);
+    }
 
-    public BackendMetrics(String backendId, int windowDuration, int numBuckets, double ewmaAlpha) {
+    /**
+     * @param histogramBuckets slices of the window for the latency histograms, which can be fewer
+     *                         than the counters' {@code numBuckets} to bound their memory
+     */
+    public BackendMetrics(String backendId, int windowDuration, int numBuckets, double ewmaAlpha,
+                          int histogramPrecision, int histogramBuckets) {
         this.backendId = backendId;
+        this.windowDuration = windowDuration;
         this.requestCount = new RollingWindow(windowDuration, numBuckets);
         this.errorCount = new RollingWindow(windowDuration, numBuckets);
         this.timeoutCount = new RollingWindow(windowDuration, numBuckets);
-        this.latencyHistogram = new RollingHistogram(windowDuration, numBuckets, latencyBuckets);
+        this.latencyHistogram = new RollingHistogram(windowDuration, histogramBuckets,
+                histogramPrecision, HIGHEST_TRACKABLE_LATENCY_MICROS);
+        this.firstByteHistogram = new RollingHistogram(windowDuration, histogramBuckets,
+                histogramPrecision, HIGHEST_TRACKABLE_LATENCY_MICROS);
+        this.peakConcurrency = new RollingMax(windowDuration, numBuckets);
         this.latencyEWMA = new EWMACalculator(ewmaAlpha);
-        this.errorRateEWMA = new EWMACalculator(ewmaAlpha);
-        this.lastUpdate = Instant.now();
+        this.poolWaitEWMA = new EWMACalculator(ewmaAlpha);
+        this.errorRateEWMA = new DecayingRate(ewmaAlpha,
+                TimeUnit.MILLISECONDS.toNanos((windowDuration * 1000L) / numBuckets));
+        this.connectLatencyEWMA = new EWMACalculator(ewmaAlpha);
+        this.lastUpdate = System.currentTimeMillis();
     }
 
-    public void record(RequestOutcome outcome) {
+    /**
+     * Allocation-free recording path. Phase durations are nanoseconds, -1 for phases the request
+     * never reached; {@code flags} is a combination of {@link MetricsCollector#FLAG_TIMEOUT} and
+     * {@link MetricsCollector#FLAG_ERROR}.
+     */
+    public void record(long poolWaitNanos, long firstByteNanos, long latencyNanos, int statusCode, byte flags) {
+        boolean timeout = (flags & MetricsCollector.FLAG_TIMEOUT) != 0;
+        boolean error = (flags & MetricsCollector.FLAG_ERROR) != 0;
+
         requestCount.increment(1);
-        latencyHistogram.record(outcome.getLatencyMs());
-        latencyEWMA.update(outcome.getLatencyMs());
+        latencyHistogram.record(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+        latencyEWMA.update(latencyNanos / NANOS_PER_MILLI);
+        if (poolWaitNanos >= 0) {
+            poolWaitEWMA.update(poolWaitNanos / NANOS_PER_MILLI);
+        }
+        if (firstByteNanos >= 0) {
+            firstByteHistogram.record(TimeUnit.NANOSECONDS.toMicros(firstByteNanos));
+        }
 
-        if (outcome.isError() || outcome.isServerError()) {
+        boolean failed = error || (statusCode >= 500 && statusCode < 600);
+        if (failed) {
             errorCount.increment(1);
+            failureListener.onFailure(this, consecutiveFailures.incrementAndGet());
+        } else if (consecutiveFailures.get() != 0) {
+            // Only written when non-zero, so healthy traffic does not contend on it.
+            consecutiveFailures.set(0);
         }
+        errorRateEWMA.record(failed);
 
-        if (outcome.isTimeout()) {
+        if (timeout) {
             timeoutCount.increment(1);
         }
 
-        double currentErrorRate = getErrorRate();
-        errorRateEWMA.update(currentErrorRate);
+        if (!timeout && !error && statusCode >= 200 && statusCode < 300) {
+            peakConcurrency.update(inflightRequests.get());
+        }
+
+        lastUpdate = System.currentTimeMillis();
+    }
+
+    void setFailureListener(FailureListener failureListener) {
+        this.failureListener = failureListener;
+    }
+
+    public void recordConnectLatency(double latencyMs) {
+        connectLatencyEWMA.update(latencyMs);
+    }
 
-        lastUpdate = Instant.now();
+    public void updatePoolOccupancy(int inUse, int capacity) {
+        this.poolInUse = inUse;
+        this.poolCapacity = capacity;
     }
 
     public void incrementInflight() {
@@ -64,7 +128,7 @@ public class BackendMetrics {
     }
 
     public long getRequestsPerSecond() {
-        return requestCount.sum() / 30;
+        return requestCount.sum() / windowDuration;
     }
 
     public double getErrorRate() {
@@ -83,16 +147,73 @@ public class BackendMetrics {
         return (timeoutCount.sum() * 100.0) / total;
     }
 
-    public long getP50Latency() {
-        return latencyHistogram.getP50();
+    /**
+     * Reads every window once and derives all rates and percentiles from those reads, instead of
+     * letting each getter re-aggregate the buckets on its own.
+     */
+    public BackendMetricsSnapshot snapshot() {
+        long requests = requestCount.sum();
+        long errors = errorCount.sum();
+        long timeouts = timeoutCount.sum();
+
+        long[] percentiles = new long[SNAPSHOT_PERCENTILES.length];
+        latencyHistogram.getPercentiles(SNAPSHOT_PERCENTILES, percentiles);
+        double p50 = toMillis(percentiles[0]);
+        double p95 = toMillis(percentiles[1]);
+        double p99 = toMillis(percentiles[2]);
+        lastP95LatencyNanos = TimeUnit.MICROSECONDS.toNanos(percentiles[1]);
+
+        firstByteHistogram.getPercentiles(SNAPSHOT_PERCENTILES, percentiles);
+
+        long inflight = inflightRequests.get();
+        long concurrencyLimit = getConcurrencyLimit();
+
+        return BackendMetricsSnapshot.builder()
+                .backendId(backendId)
+                .timestamp(System.currentTimeMillis())
+                .requestCount(requests)
+                .errorCount(errors)
+                .timeoutCount(timeouts)
+                .requestsPerSecond((double) requests / windowDuration)
+                .errorRate(requests == 0 ? 0.0 : (errors * 100.0) / requests)
+                .timeoutRate(requests == 0 ? 0.0 : (timeouts * 100.0) / requests)
+                .p50Latency(p50)
+                .p95Latency(p95)
+                .p99Latency(p99)
+                .p50FirstByteLatency(toMillis(percentiles[0]))
+                .p95FirstByteLatency(toMillis(percentiles[1]))
+                .p99FirstByteLatency(toMillis(percentiles[2]))
+                .poolWaitTime(poolWaitEWMA.getValue())
+                .latencyVariance(p50 == 0 ? 0.0 : (p99 - p50) / p50)
+                .latencyTrend(latencyEWMA.getValue())
+                .errorRateTrend(errorRateEWMA.getValue())
+                .consecutiveFailures(consecutiveFailures.get())
+                .inflightCount(inflight)
+                .concurrencyLimit(concurrencyLimit)
+                .saturationPercent((inflight * 100.0) / concurrencyLimit)
+                .connectLatency(connectLatencyEWMA.getValue())
+                .poolOccupancyPercent(getPoolOccupancyPercent())
+                .build();
+    }
+
+    public double getP50Latency() {
+        return toMillis(latencyHistogram.getPercentile(50.0));
     }
 
-    public long getP95Latency() {
-        return latencyHistogram.getP95();
+    public double getP95Latency() {
+        return toMillis(latencyHistogram.getPercentile(95.0));
     }
 
-    public long getP99Latency() {
-        return latencyHistogram.getP99();
+    public double getP99Latency() {
+        return toMillis(latencyHistogram.getPercentile(99.0));
+    }
+
+    public double getP95FirstByteLatency() {
+        return toMillis(firstByteHistogram.getPercentile(95.0));
+    }
+
+    public double getPoolWaitTime() {
+        return poolWaitEWMA.getValue();
     }
 
     public double getLatencyTrend() {
@@ -103,18 +224,46 @@ public class BackendMetrics {
         return errorRateEWMA.getValue();
     }
 
+    public int getConsecutiveFailures() {
+        return consecutiveFailures.get();
+    }
+
     public long getInflightCount() {
         return inflightRequests.get();
     }
 
+    public double getConnectLatency() {
+        return connectLatencyEWMA.getValue();
+    }
+
+    public double getPoolOccupancyPercent() {
+        int capacity = poolCapacity;
+        if (capacity == 0) {
+            return 0.0;
+        }
+        return (poolInUse * 100.0) / capacity;
+    }
+
+    public long getConcurrencyLimit() {
+        return Math.max(peakConcurrency.max(), MIN_CONCURRENCY_LIMIT);
+    }
+
+    public double getSaturationPercent() {
+        return (inflightRequests.get() * 100.0) / getConcurrencyLimit();
+    }
+
     public double getLatencyVariance() {
-        long p50 = getP50Latency();
-        long p99 = getP99Latency();
+        double p50 = getP50Latency();
+        double p99 = getP99Latency();
 
         if (p50 == 0) {
             return 0.0;
         }
 
-        return (double) (p99 - p50) / p50;
+        return (p99 - p50) / p50;
+    }
+
+    private static double toMillis(long micros) {
+        return micros / 1000.0;
     }
 }
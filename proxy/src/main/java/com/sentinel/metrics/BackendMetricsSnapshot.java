@@ -0,0 +1,52 @@
+package com.sentinel.metrics;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Point-in-time view of a backend's metrics, taken once per control tick so that every stage of
+ * the control pipeline and the dashboard work from the same numbers. Latencies are in milliseconds
+ * with microsecond resolution, rates in percent. {@code poolWaitTime} is the smoothed time requests
+ * wait for a permit of the backend's connection pool, which grows as the pool saturates and says
+ * nothing about the network; {@code connectLatency} is a TCP connect probe, taken when the backend
+ * is added and then only while it is idle or ramping up.
+ */
+@Value
+@Builder
+public class BackendMetricsSnapshot {
+
+    String backendId;
+    long timestamp;
+
+    long requestCount;
+    long errorCount;
+    long timeoutCount;
+    double requestsPerSecond;
+    double errorRate;
+    double timeoutRate;
+
+    double p50Latency;
+    double p95Latency;
+    double p99Latency;
+    double p50FirstByteLatency;
+    double p95FirstByteLatency;
+    double p99FirstByteLatency;
+    double poolWaitTime;
+    double latencyVariance;
+    double latencyTrend;
+    double errorRateTrend;
+    int consecutiveFailures;
+
+    long inflightCount;
+    long concurrencyLimit;
+    double saturationPercent;
+    double connectLatency;
+    double poolOccupancyPercent;
+
+    public static BackendMetricsSnapshot empty(String backendId) {
+        return BackendMetricsSnapshot.builder()
+                .backendId(backendId)
+                .timestamp(System.currentTimeMillis())
+                .build();
+    }
+}
@@ -0,0 +1,80 @@
+package com.sentinel.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Epoch bookkeeping shared by the rolling metrics. Bucket {@code epoch % numBuckets} belongs to
+ * exactly one epoch at a time; the first writer into a stale bucket claims it, clears it and
+ * publishes the new epoch. Concurrent writers spin briefly for the publish and then record
+ * without it, so a rotating thread that is descheduled cannot stall them; such a sample may be
+ * wiped by the clear, which only loses it. Readers skip a rotating bucket.
+ */
+class BucketEpochs {
+
+    static final int CURRENT = 0;
+    static final int CLAIMED = 1;
+    static final int EXPIRED = 2;
+
+    private static final long EMPTY = 0;
+    private static final long ROTATING = -1;
+    private static final int MAX_ROTATION_SPINS = 64;
+
+    private final int numBuckets;
+    private final long bucketDurationMs;
+    private final AtomicLongArray epochs;
+
+    BucketEpochs(int windowDurationSeconds, int numBuckets) {
+        this.numBuckets = numBuckets;
+        this.bucketDurationMs = (windowDurationSeconds * 1000L) / numBuckets;
+        this.epochs = new AtomicLongArray(numBuckets);
+    }
+
+    long epochAt(long timeMs) {
+        return timeMs / bucketDurationMs;
+    }
+
+    int indexOf(long epoch) {
+        return (int) (epoch % numBuckets);
+    }
+
+    /**
+     * Returns {@link #CURRENT} if the bucket already belongs to {@code epoch}, {@link #CLAIMED}
+     * if the caller won the rotation and must clear the bucket and then call {@link #publish},
+     * or {@link #EXPIRED} if the bucket has moved past {@code epoch} and the sample should be dropped.
+     * A bucket still rotating after a short spin is reported as {@link #CURRENT}.
+     */
+    int claim(int index, long epoch) {
+        long bucketEpoch;
+        int spins = 0;
+        while ((bucketEpoch = epochs.get(index)) != epoch) {
+            if (bucketEpoch > epoch) {
+                return EXPIRED;
+            }
+            if (bucketEpoch == ROTATING) {
+                if (++spins > MAX_ROTATION_SPINS) {
+                    return CURRENT;
+                }
+                Thread.onSpinWait();
+            } else if (epochs.compareAndSet(index, bucketEpoch, ROTATING)) {
+                return CLAIMED;
+            }
+        }
+        return CURRENT;
+    }
+
+    void publish(int index, long epoch) {
+        epochs.set(index, epoch);
+    }
+
+    boolean isLive(int index, long currentEpoch) {
+        return epochs.get(index) > currentEpoch - numBuckets;
+    }
+
+    void clear(int index) {
+        epochs.set(index, EMPTY);
+    }
+
+    int size() {
+        return numBuckets;
+    }
+}
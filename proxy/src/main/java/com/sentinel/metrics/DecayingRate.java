@@ -0,0 +1,87 @@
+package com.sentinel.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Time-decayed EWMA of the percentage of events that were flagged (e.g. errors). Recording only
+ * bumps two striped counters, which are never reset: resetting a {@link LongAdder} races with
+ * concurrent increments and loses some. Readers fold the counts gathered since the last fold,
+ * taken as deltas from the totals seen then, into the average, weighting them as {@code 1 - (1 - alpha)^ticks} so that a fold after n ticks is
+ * equivalent to n per-tick updates at the interval's rate. Intervals without events leave the
+ * value unchanged.
+ */
+public class DecayingRate {
+
+    private final double alpha;
+    private final long tickNanos;
+    private final LongAdder events = new LongAdder();
+    private final LongAdder flagged = new LongAdder();
+    private final AtomicLong lastFoldNanos;
+    private volatile long foldedEvents;
+    private volatile long foldedFlagged;
+
+    private volatile double value;
+    private volatile boolean initialized;
+
+    public DecayingRate(double alpha, long tickNanos) {
+        this.alpha = Math.max(0.0, Math.min(1.0, alpha));
+        this.tickNanos = tickNanos;
+        this.lastFoldNanos = new AtomicLong(System.nanoTime());
+    }
+
+    public void record(boolean isFlagged) {
+        events.increment();
+        if (isFlagged) {
+            flagged.increment();
+        }
+    }
+
+    public double getValue() {
+        foldIfDue();
+        return value;
+    }
+
+    public void reset() {
+        foldedFlagged = flagged.sum();
+        foldedEvents = events.sum();
+        value = 0.0;
+        initialized = false;
+        lastFoldNanos.set(System.nanoTime());
+    }
+
+    /**
+     * At most one reader per tick wins the CAS on {@link #lastFoldNanos} and becomes the only writer
+     * of {@link #value}; everyone else reads the previous fold.
+     */
+    private void foldIfDue() {
+        long now = System.nanoTime();
+        long last = lastFoldNanos.get();
+        long elapsed = now - last;
+        if (elapsed < tickNanos || !lastFoldNanos.compareAndSet(last, now)) {
+            return;
+        }
+
+        // Flagged first: record() counts the event before the flag, so no flag is seen without
+        // its event. An increment that lands after its counter was summed goes to the next fold.
+        long flaggedTotal = flagged.sum();
+        long eventTotal = events.sum();
+        long flaggedCount = flaggedTotal - foldedFlagged;
+        long eventCount = eventTotal - foldedEvents;
+        foldedFlagged = flaggedTotal;
+        foldedEvents = eventTotal;
+        if (eventCount == 0) {
+            return;
+        }
+
+        double sample = Math.min(100.0, (flaggedCount * 100.0) / eventCount);
+        if (!initialized) {
+            value = sample;
+            initialized = true;
+            return;
+        }
+
+        double weight = 1 - Math.pow(1 - alpha, (double) elapsed / tickNanos);
+        value += weight * (sample - value);
+    }
+}
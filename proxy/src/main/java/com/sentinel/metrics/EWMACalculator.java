@@ -1,32 +1,41 @@
 package com.sentinel.metrics;
 
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-sample exponentially weighted moving average. The current value is kept as raw double
+ * bits in an {@link AtomicLong} and updated with a CAS loop, so concurrent request threads never
+ * block on each other; NaN bits mark the not-yet-initialized state.
+ */
 public class EWMACalculator {
 
+    private static final long UNINITIALIZED = Double.doubleToRawLongBits(Double.NaN);
+
     private final double alpha;
-    private volatile double currentValue;
-    private volatile boolean initialized;
+    private final AtomicLong valueBits = new AtomicLong(UNINITIALIZED);
 
     public EWMACalculator(double alpha) {
         this.alpha = Math.max(0.0, Math.min(1.0, alpha));
-        this.currentValue = 0.0;
-        this.initialized = false;
     }
 
-    public synchronized void update(double newValue) {
-        if (!initialized) {
-            currentValue = newValue;
-            initialized = true;
-        } else {
-            currentValue = (alpha * newValue) + ((1 - alpha) * currentValue);
-        }
+    public void update(double newValue) {
+        long currentBits;
+        long updatedBits;
+        do {
+            currentBits = valueBits.get();
+            double updated = currentBits == UNINITIALIZED
+                    ? newValue
+                    : (alpha * newValue) + ((1 - alpha) * Double.longBitsToDouble(currentBits));
+            updatedBits = Double.doubleToRawLongBits(updated);
+        } while (!valueBits.compareAndSet(currentBits, updatedBits));
     }
 
     public double getValue() {
-        return currentValue;
+        long bits = valueBits.get();
+        return bits == UNINITIALIZED ? 0.0 : Double.longBitsToDouble(bits);
     }
 
     public void reset() {
-        currentValue = 0.0;
-        initialized = false;
+        valueBits.set(UNINITIALIZED);
     }
 }
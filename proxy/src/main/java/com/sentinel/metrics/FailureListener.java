@@ -0,0 +1,17 @@
+package com.sentinel.metrics;
+
+/**
+ * Notified from the recording path for every failed request, with the backend's current failure
+ * streak. Implementations run on the recording thread and must return quickly.
+ */
+@FunctionalInterface
+public interface FailureListener {
+
+    FailureListener NONE = (metrics, consecutiveFailures) -> {
+    };
+
+    /**
+     * @param consecutiveFailures failures since the last successful request, including this one
+     */
+    void onFailure(BackendMetrics metrics, int consecutiveFailures);
+}
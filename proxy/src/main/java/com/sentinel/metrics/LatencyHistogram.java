@@ -1,22 +1,39 @@
 package com.sentinel.metrics;
 
-import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicLongArray;
 
+/**
+ * Log-linear histogram in the style of HdrHistogram. Values below {@code 2^precisionBits} get
+ * one bucket each; above that every power of two is split into {@code 2^(precisionBits - 1)}
+ * equal buckets, so the bucket width never exceeds {@code 2^-(precisionBits - 1)} of the value
+ * and the bucket index is computed in O(1) from the position of the highest set bit.
+ * Values are unit-agnostic; the metrics layer records microseconds.
+ */
 public class LatencyHistogram {
 
-    private final long[] bucketBounds;
+    private final int precisionBits;
+    private final int subBucketCount;
+    private final int subBucketHalfCount;
+    private final long highestTrackableValue;
     private final AtomicLongArray counts;
 
-    public LatencyHistogram(long[] bucketBounds) {
-        this.bucketBounds = Arrays.copyOf(bucketBounds, bucketBounds.length);
-        Arrays.sort(this.bucketBounds);
-        this.counts = new AtomicLongArray(bucketBounds.length + 1);
+    public LatencyHistogram(int precisionBits, long highestTrackableValue) {
+        if (precisionBits < 1 || precisionBits > 16) {
+            throw new IllegalArgumentException("precisionBits must be between 1 and 16: " + precisionBits);
+        }
+        if (highestTrackableValue < 1) {
+            throw new IllegalArgumentException("highestTrackableValue must be positive: " + highestTrackableValue);
+        }
+
+        this.precisionBits = precisionBits;
+        this.subBucketCount = 1 << precisionBits;
+        this.subBucketHalfCount = subBucketCount >> 1;
+        this.highestTrackableValue = highestTrackableValue;
+        this.counts = new AtomicLongArray(findBucketIndex(highestTrackableValue) + 1);
     }
 
-    public void record(long latencyMs) {
-        int bucketIndex = findBucketIndex(latencyMs);
-        counts.incrementAndGet(bucketIndex);
+    public void record(long value) {
+        counts.incrementAndGet(findBucketIndex(value));
     }
 
     public long getPercentile(double percentile) {
@@ -25,35 +42,17 @@ public class LatencyHistogram {
             return 0;
         }
 
-        long targetCount = (long) (total * percentile / 100.0);
+        long targetCount = targetCount(total, percentile);
         long cumulative = 0;
 
         for (int i = 0; i < counts.length(); i++) {
             cumulative += counts.get(i);
             if (cumulative >= targetCount) {
-                if (i == 0) {
-                    return bucketBounds[0];
-                } else if (i >= bucketBounds.length) {
-                    return bucketBounds[bucketBounds.length - 1];
-                } else {
-                    return bucketBounds[i];
-                }
+                return bucketUpperBound(i);
             }
         }
 
-        return bucketBounds[bucketBounds.length - 1];
-    }
-
-    public long getP50() {
-        return getPercentile(50);
-    }
-
-    public long getP95() {
-        return getPercentile(95);
-    }
-
-    public long getP99() {
-        return getPercentile(99);
+        return highestTrackableValue;
     }
 
     public long getTotalCount() {
@@ -70,20 +69,50 @@ public class LatencyHistogram {
         }
     }
 
-    public long[] getCounts() {
-        long[] result = new long[counts.length()];
+    public int getBucketCount() {
+        return counts.length();
+    }
+
+    /**
+     * Adds this histogram's counts into {@code target}, which must have at least
+     * {@link #getBucketCount()} slots, and returns the number of values added.
+     */
+    long addCountsTo(long[] target) {
+        long total = 0;
         for (int i = 0; i < counts.length(); i++) {
-            result[i] = counts.get(i);
+            long count = counts.get(i);
+            target[i] += count;
+            total += count;
         }
-        return result;
+        return total;
     }
 
-    private int findBucketIndex(long latencyMs) {
-        for (int i = 0; i < bucketBounds.length; i++) {
-            if (latencyMs <= bucketBounds[i]) {
-                return i;
-            }
+    int findBucketIndex(long value) {
+        long clamped = Math.min(Math.max(value, 0), highestTrackableValue);
+        if (clamped < subBucketCount) {
+            return (int) clamped;
+        }
+
+        int shift = 64 - Long.numberOfLeadingZeros(clamped) - precisionBits;
+        int subBucket = (int) (clamped >>> shift) - subBucketHalfCount;
+        return subBucketCount + ((shift - 1) << (precisionBits - 1)) + subBucket;
+    }
+
+    /**
+     * Highest value that maps to {@code index}, capped at the highest trackable value.
+     */
+    long bucketUpperBound(int index) {
+        if (index < subBucketCount) {
+            return index;
         }
-        return bucketBounds.length;
+
+        int offset = index - subBucketCount;
+        int shift = (offset >>> (precisionBits - 1)) + 1;
+        long subBucket = (offset & (subBucketHalfCount - 1)) + subBucketHalfCount;
+        return Math.min(((subBucket + 1) << shift) - 1, highestTrackableValue);
+    }
+
+    static long targetCount(long total, double percentile) {
+        return Math.max(1, (long) Math.ceil(total * percentile / 100.0));
     }
 }
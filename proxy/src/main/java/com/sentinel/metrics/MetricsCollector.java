@@ -1,7 +1,26 @@
 package com.sentinel.metrics;
 
-import com.sentinel.model.RequestOutcome;
-
 public interface MetricsCollector {
-    void record(RequestOutcome outcome);
+
+    byte FLAG_TIMEOUT = 1;
+    byte FLAG_ERROR = 1 << 1;
+    byte FLAG_CONNECT_FAILURE = 1 << 2;
+
+    /**
+     * Records one proxied request without allocating. {@code metrics} is what
+     * {@link #requestStarted(int, String)} returned for the request, so outcomes land on the
+     * backend that served it even if its pool index has since been reused. Phase durations are
+     * monotonic nanoseconds from the start of the request, -1 if the phase was never reached;
+     * {@code flags} combines {@link #FLAG_TIMEOUT}, {@link #FLAG_ERROR} and {@link #FLAG_CONNECT_FAILURE}.
+     */
+    void record(BackendMetrics metrics, long poolWaitNanos, long firstByteNanos, long latencyNanos,
+                int statusCode, byte flags);
+
+    /**
+     * Counts the request as in flight and returns the metrics to pass to {@link #record} and
+     * {@link #requestFinished}; null when metrics are disabled.
+     */
+    BackendMetrics requestStarted(int backendIndex, String backendId);
+
+    void requestFinished(BackendMetrics metrics);
 }
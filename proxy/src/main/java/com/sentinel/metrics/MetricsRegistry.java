@@ -4,6 +4,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
@@ -12,36 +13,156 @@ import java.util.concurrent.ConcurrentHashMap;
 @Component
 public class MetricsRegistry {
 
-    private final Map<String, BackendMetrics> metricsMap = new ConcurrentHashMap<>();
+    private static final int HISTOGRAMS_PER_BACKEND = 2;
+    private static final int MIN_HISTOGRAM_BUCKETS = 4;
+    private static final int MIN_HISTOGRAM_PRECISION = 3;
+
+    private final ConcurrentHashMap<String, BackendMetrics> metricsMap = new ConcurrentHashMap<>();
+    private volatile BackendMetrics[] metricsByIndex = new BackendMetrics[0];
+    private volatile FailureListener failureListener = FailureListener.NONE;
     private final int windowDuration;
     private final int numBuckets;
     private final double ewmaAlpha;
+    private final int histogramPrecision;
+    private final int histogramBuckets;
+    private final int parallelThreshold;
 
     public MetricsRegistry(@Value("${sentinel.metrics.windowDuration:30}") int windowDuration,
                           @Value("${sentinel.metrics.windowBuckets:30}") int numBuckets,
-                          @Value("${sentinel.metrics.ewmaAlpha:0.3}") double ewmaAlpha) {
+                          @Value("${sentinel.metrics.ewmaAlpha:0.3}") double ewmaAlpha,
+                          @Value("${sentinel.metrics.histogramPrecision:5}") int histogramPrecision,
+                          @Value("${sentinel.metrics.histogramMemory:256}") int histogramMemoryMb,
+                          @Value("${sentinel.proxy.maxBackends:10000}") int maxBackends,
+                          @Value("${sentinel.control.parallelThreshold:256}") int parallelThreshold) {
         this.windowDuration = windowDuration;
         this.numBuckets = numBuckets;
         this.ewmaAlpha = ewmaAlpha;
+        this.parallelThreshold = parallelThreshold;
+
+        // Fit the latency histograms of maxBackends backends into the budget: first with fewer
+        // slices of the window, then with coarser buckets once the slices reach their minimum.
+        long budgetBytes = histogramMemoryMb * 1024L * 1024L;
+        int precision = histogramPrecision;
+        int slices = slicesWithin(budgetBytes, maxBackends, precision);
+        while (slices < MIN_HISTOGRAM_BUCKETS && precision > MIN_HISTOGRAM_PRECISION) {
+            slices = slicesWithin(budgetBytes, maxBackends, --precision);
+        }
+        this.histogramPrecision = precision;
+        this.histogramBuckets = Math.min(numBuckets, Math.max(slices, MIN_HISTOGRAM_BUCKETS));
+
+        long backendBytes = (long) HISTOGRAMS_PER_BACKEND * histogramBuckets * sliceBytes(precision);
+        log.info("Latency histograms: {} slices at {} precision bits, {}KB per backend, {}MB for {} backends",
+                histogramBuckets, precision, backendBytes / 1024, backendBytes * maxBackends / (1024 * 1024),
+                maxBackends);
     }
 
     public BackendMetrics getOrCreate(String backendId) {
         return metricsMap.computeIfAbsent(backendId, id -> {
             log.info("Creating metrics for backend: {}", id);
-            return new BackendMetrics(id, windowDuration, numBuckets, ewmaAlpha);
+            BackendMetrics metrics = new BackendMetrics(id, windowDuration, numBuckets, ewmaAlpha,
+                    histogramPrecision, histogramBuckets);
+            metrics.setFailureListener(failureListener);
+            return metrics;
         });
     }
 
+    /**
+     * Returns the metrics for {@code backendId} and binds them to its backend pool index, so later
+     * lookups through {@link #get(int)} are a plain array read. Rebinds when the index has been
+     * handed to a different backend.
+     */
+    public BackendMetrics getOrCreate(int backendIndex, String backendId) {
+        BackendMetrics[] byIndex = metricsByIndex;
+        if (backendIndex >= 0 && backendIndex < byIndex.length) {
+            BackendMetrics metrics = byIndex[backendIndex];
+            if (metrics != null && metrics.getBackendId().equals(backendId)) {
+                return metrics;
+            }
+        }
+        return bind(backendIndex, getOrCreate(backendId));
+    }
+
+    /**
+     * Metrics bound to {@code backendIndex}, or null if no backend has been bound to it yet.
+     */
+    public BackendMetrics get(int backendIndex) {
+        BackendMetrics[] byIndex = metricsByIndex;
+        return backendIndex >= 0 && backendIndex < byIndex.length ? byIndex[backendIndex] : null;
+    }
+
     public Optional<BackendMetrics> get(String backendId) {
         return Optional.ofNullable(metricsMap.get(backendId));
     }
 
+    /**
+     * Installs the listener that every backend's recording path reports failures to.
+     */
+    public void setFailureListener(FailureListener failureListener) {
+        this.failureListener = failureListener;
+        metricsMap.values().forEach(metrics -> metrics.setFailureListener(failureListener));
+    }
+
+    /**
+     * Snapshots every backend. From {@code parallelThreshold} backends on, the work is split
+     * across the common fork-join pool.
+     */
+    public Map<String, BackendMetricsSnapshot> snapshotAll() {
+        Map<String, BackendMetricsSnapshot> snapshots = new ConcurrentHashMap<>(metricsMap.size() * 2);
+        metricsMap.forEach(parallelThreshold, (id, metrics) -> snapshots.put(id, metrics.snapshot()));
+        return snapshots;
+    }
+
     public Map<String, BackendMetrics> getAll() {
         return Map.copyOf(metricsMap);
     }
 
     public void remove(String backendId) {
-        metricsMap.remove(backendId);
+        BackendMetrics removed = metricsMap.remove(backendId);
+        if (removed != null) {
+            unbind(removed);
+        }
         log.info("Removed metrics for backend: {}", backendId);
     }
+
+    private static int slicesWithin(long budgetBytes, int maxBackends, int precision) {
+        long perSlice = (long) HISTOGRAMS_PER_BACKEND * Math.max(maxBackends, 1) * sliceBytes(precision);
+        return (int) Math.min(budgetBytes / perSlice, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Heap taken by one slice of a rolling latency histogram: its counts plus the array header.
+     */
+    private static long sliceBytes(int precision) {
+        int counts = new LatencyHistogram(precision, BackendMetrics.HIGHEST_TRACKABLE_LATENCY_MICROS).getBucketCount();
+        return 16L + 8L * counts;
+    }
+
+    private synchronized BackendMetrics bind(int backendIndex, BackendMetrics metrics) {
+        if (backendIndex < 0) {
+            return metrics;
+        }
+
+        BackendMetrics[] byIndex = metricsByIndex;
+        if (backendIndex >= byIndex.length) {
+            byIndex = Arrays.copyOf(byIndex, Math.max(backendIndex + 1, byIndex.length * 2));
+        } else if (byIndex[backendIndex] != metrics) {
+            byIndex = byIndex.clone();
+        } else {
+            return metrics;
+        }
+
+        byIndex[backendIndex] = metrics;
+        metricsByIndex = byIndex;
+        return metrics;
+    }
+
+    private synchronized void unbind(BackendMetrics metrics) {
+        BackendMetrics[] byIndex = metricsByIndex.clone();
+        for (int i = 0; i < byIndex.length; i++) {
+            if (byIndex[i] == metrics) {
+                byIndex[i] = null;
+            }
+        }
+        metricsByIndex = byIndex;
+    }
 }
@@ -1,6 +1,5 @@
 package com.sentinel.metrics;
 
-import com.sentinel.model.RequestOutcome;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
@@ -11,8 +10,16 @@ import org.springframework.stereotype.Component;
 public class NoOpMetricsCollector implements MetricsCollector {
 
     @Override
-    public void record(RequestOutcome outcome) {
-        log.debug("Recorded outcome: backend={}, latency={}ms, status={}, success={}",
-                outcome.getBackendId(), outcome.getLatencyMs(), outcome.getStatusCode(), outcome.isSuccess());
+    public void record(BackendMetrics metrics, long poolWaitNanos, long firstByteNanos, long latencyNanos,
+                       int statusCode, byte flags) {
+    }
+
+    @Override
+    public BackendMetrics requestStarted(int backendIndex, String backendId) {
+        return null;
+    }
+
+    @Override
+    public void requestFinished(BackendMetrics metrics) {
     }
 }
@@ -0,0 +1,123 @@
+package com.sentinel.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded multi-producer, single-consumer ring of request outcomes. Slots are preallocated
+ * parallel arrays, so publishing allocates nothing. Producers claim a sequence with a
+ * CAS on the cursor, fill the slot and publish it by storing the sequence number; the consumer
+ * reads slots in sequence order until it reaches one that has not been published yet.
+ * <p>
+ * When the consumer falls a full ring behind, new outcomes are dropped and counted rather than
+ * blocking the request thread.
+ */
+public class OutcomeRingBuffer {
+
+    private final int capacity;
+    private final int mask;
+    private final BackendMetrics[] metrics;
+    private final long[] poolWaitTimes;
+    private final long[] firstByteTimes;
+    private final long[] latencies;
+    private final int[] statusCodes;
+    private final byte[] flags;
+    private final AtomicLongArray published;
+    private final AtomicLong cursor = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private volatile long consumed;
+
+    @FunctionalInterface
+    public interface Handler {
+        void onOutcome(BackendMetrics metrics, long poolWaitNanos, long firstByteNanos, long latencyNanos,
+                       int statusCode, byte flags);
+    }
+
+    public OutcomeRingBuffer(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring buffer capacity must be a power of two: " + capacity);
+        }
+
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.metrics = new BackendMetrics[capacity];
+        this.poolWaitTimes = new long[capacity];
+        this.firstByteTimes = new long[capacity];
+        this.latencies = new long[capacity];
+        this.statusCodes = new int[capacity];
+        this.flags = new byte[capacity];
+        this.published = new AtomicLongArray(capacity);
+
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+    }
+
+    public boolean publish(BackendMetrics backendMetrics, long poolWaitNanos, long firstByteNanos, long latencyNanos,
+                           int statusCode, byte outcomeFlags) {
+        long sequence;
+        do {
+            sequence = cursor.get();
+            if (sequence - consumed >= capacity) {
+                dropped.increment();
+                return false;
+            }
+        } while (!cursor.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) (sequence & mask);
+        metrics[slot] = backendMetrics;
+        poolWaitTimes[slot] = poolWaitNanos;
+        firstByteTimes[slot] = firstByteNanos;
+        latencies[slot] = latencyNanos;
+        statusCodes[slot] = statusCode;
+        flags[slot] = outcomeFlags;
+        published.set(slot, sequence);
+        return true;
+    }
+
+    /**
+     * Hands up to {@code maxBatch} published outcomes to {@code handler} in sequence order and
+     * returns how many were consumed. Must only be called from the single consumer thread.
+     */
+    public int drain(Handler handler, int maxBatch) {
+        long next = consumed;
+        int count = 0;
+
+        while (count < maxBatch) {
+            int slot = (int) (next & mask);
+            if (published.get(slot) != next) {
+                break;
+            }
+
+            BackendMetrics backendMetrics = metrics[slot];
+            // Do not keep a removed backend's metrics reachable from the ring.
+            metrics[slot] = null;
+            handler.onOutcome(backendMetrics, poolWaitTimes[slot], firstByteTimes[slot], latencies[slot],
+                    statusCodes[slot], flags[slot]);
+            next++;
+            count++;
+        }
+
+        if (count > 0) {
+            consumed = next;
+        }
+        return count;
+    }
+
+    public long getPublishedCount() {
+        return cursor.get();
+    }
+
+    public long getConsumedCount() {
+        return consumed;
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -1,31 +1,33 @@
 package com.sentinel.metrics;
 
-import com.sentinel.model.RequestOutcome;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.stereotype.Component;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
-@ConditionalOnProperty(name = "sentinel.metrics.enabled", havingValue = "true", matchIfMissing = true)
+@ConditionalOnExpression("${sentinel.metrics.enabled:true} and '${sentinel.metrics.ingestion:direct}' != 'ring'")
 public class RealMetricsCollector implements MetricsCollector {
 
     private final MetricsRegistry metricsRegistry;
 
     @Override
-    public void record(RequestOutcome outcome) {
-        BackendMetrics metrics = metricsRegistry.getOrCreate(outcome.getBackendId());
-        metrics.record(outcome);
+    public void record(BackendMetrics metrics, long poolWaitNanos, long firstByteNanos, long latencyNanos,
+                       int statusCode, byte flags) {
+        metrics.record(poolWaitNanos, firstByteNanos, latencyNanos, statusCode, flags);
+    }
 
-        if (log.isDebugEnabled()) {
-            log.debug("Recorded: backend={}, latency={}ms, status={}, p95={}, errorRate={}%",
-                    outcome.getBackendId(),
-                    outcome.getLatencyMs(),
-                    outcome.getStatusCode(),
-                    metrics.getP95Latency(),
-                    String.format("%.2f", metrics.getErrorRate()));
-        }
+    @Override
+    public BackendMetrics requestStarted(int backendIndex, String backendId) {
+        BackendMetrics metrics = metricsRegistry.getOrCreate(backendIndex, backendId);
+        metrics.incrementInflight();
+        return metrics;
+    }
+
+    @Override
+    public void requestFinished(BackendMetrics metrics) {
+        metrics.decrementInflight();
     }
 }
@@ -0,0 +1,131 @@
+package com.sentinel.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Moves outcome recording off the request thread: {@link #record} only publishes the outcome's
+ * primitive fields into an {@link OutcomeRingBuffer}, and a single consumer thread applies them to
+ * {@link BackendMetrics}. If the consumer falls a full ring behind, outcomes are dropped and
+ * counted; request threads never block on metrics. In-flight tracking stays synchronous because
+ * routing and concurrency limiting read it live.
+ */
+@Slf4j
+@Component
+@ConditionalOnExpression("${sentinel.metrics.enabled:true} and '${sentinel.metrics.ingestion:direct}' == 'ring'")
+public class RingBufferMetricsCollector implements MetricsCollector {
+
+    private static final int MAX_BATCH = 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final long DROP_REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final MetricsRegistry metricsRegistry;
+    private final OutcomeRingBuffer ringBuffer;
+    private final OutcomeRingBuffer.Handler applier = this::apply;
+    private final Thread consumer;
+
+    private volatile boolean running = true;
+    private long reportedDrops;
+    private long lastDropReport = System.nanoTime();
+
+    public RingBufferMetricsCollector(MetricsRegistry metricsRegistry,
+                                      @Value("${sentinel.metrics.ringBufferSize:65536}") int ringBufferSize,
+                                      MeterRegistry meterRegistry) {
+        this.metricsRegistry = metricsRegistry;
+        this.ringBuffer = new OutcomeRingBuffer(ringBufferSize);
+        this.consumer = Thread.ofPlatform()
+                .name("metrics-ingest")
+                .daemon(true)
+                .unstarted(this::consume);
+
+        FunctionCounter.builder("sentinel.metrics.outcomes.dropped", this, RingBufferMetricsCollector::getDroppedCount)
+                .description("Request outcomes dropped because the metrics ring buffer was full")
+                .register(meterRegistry);
+        Gauge.builder("sentinel.metrics.outcomes.pending", this, RingBufferMetricsCollector::getPendingCount)
+                .register(meterRegistry);
+
+        log.info("RingBufferMetricsCollector initialized with {} slots", ringBufferSize);
+    }
+
+    @PostConstruct
+    public void start() {
+        consumer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(consumer);
+        consumer.join(TimeUnit.SECONDS.toMillis(1));
+    }
+
+    @Override
+    public void record(BackendMetrics metrics, long poolWaitNanos, long firstByteNanos, long latencyNanos,
+                       int statusCode, byte flags) {
+        ringBuffer.publish(metrics, poolWaitNanos, firstByteNanos, latencyNanos, statusCode, flags);
+    }
+
+    @Override
+    public BackendMetrics requestStarted(int backendIndex, String backendId) {
+        BackendMetrics metrics = metricsRegistry.getOrCreate(backendIndex, backendId);
+        metrics.incrementInflight();
+        return metrics;
+    }
+
+    @Override
+    public void requestFinished(BackendMetrics metrics) {
+        metrics.decrementInflight();
+    }
+
+    public long getDroppedCount() {
+        return ringBuffer.getDroppedCount();
+    }
+
+    public long getPendingCount() {
+        return ringBuffer.getPublishedCount() - ringBuffer.getConsumedCount();
+    }
+
+    private void consume() {
+        while (running) {
+            if (ringBuffer.drain(applier, MAX_BATCH) == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+            reportDrops();
+        }
+
+        int flushed;
+        do {
+            flushed = ringBuffer.drain(applier, MAX_BATCH);
+        } while (flushed > 0);
+    }
+
+    private void apply(BackendMetrics metrics, long poolWaitNanos, long firstByteNanos, long latencyNanos,
+                       int statusCode, byte flags) {
+        metrics.record(poolWaitNanos, firstByteNanos, latencyNanos, statusCode, flags);
+    }
+
+    private void reportDrops() {
+        long now = System.nanoTime();
+        if (now - lastDropReport < DROP_REPORT_INTERVAL_NANOS) {
+            return;
+        }
+        lastDropReport = now;
+
+        long drops = ringBuffer.getDroppedCount();
+        if (drops > reportedDrops) {
+            log.warn("Metrics ring buffer full: dropped {} outcomes in the last {}s ({} total)",
+                    drops - reportedDrops, TimeUnit.NANOSECONDS.toSeconds(DROP_REPORT_INTERVAL_NANOS), drops);
+            reportedDrops = drops;
+        }
+    }
+}
@@ -1,134 +1,97 @@
 package com.sentinel.metrics;
 
-import java.time.Instant;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-
+import java.util.Arrays;
+
+/**
+ * Sliding window of {@link LatencyHistogram}s, one per bucket of the window. Recording is
+ * lock-free: it claims the current bucket by epoch and increments one atomic slot. Percentile
+ * queries merge the live buckets into a reused scratch array, so they do not allocate; queries
+ * are serialized on that array.
+ */
 public class RollingHistogram {
 
-    private final long[] latencyBuckets;
-    private final int windowDuration;
-    private final int numBuckets;
+    private final BucketEpochs epochs;
     private final LatencyHistogram[] histograms;
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
-
-    private int currentBucketIndex = 0;
-    private long lastRotation;
+    private final long[] scratch;
 
-    public RollingHistogram(int windowDuration, int numBuckets, long[] latencyBuckets) {
-        this.windowDuration = windowDuration;
-        this.numBuckets = numBuckets;
-        this.latencyBuckets = latencyBuckets;
+    public RollingHistogram(int windowDuration, int numBuckets, int precisionBits, long highestTrackableValue) {
+        this.epochs = new BucketEpochs(windowDuration, numBuckets);
         this.histograms = new LatencyHistogram[numBuckets];
 
         for (int i = 0; i < numBuckets; i++) {
-            histograms[i] = new LatencyHistogram(latencyBuckets);
+            histograms[i] = new LatencyHistogram(precisionBits, highestTrackableValue);
         }
 
-        this.lastRotation = Instant.now().toEpochMilli();
+        this.scratch = new long[histograms[0].getBucketCount()];
     }
 
-    public void record(long latencyMs) {
-        lock.readLock().lock();
-        try {
-            rotate();
-            histograms[currentBucketIndex].record(latencyMs);
-        } finally {
-            lock.readLock().unlock();
+    public void record(long value) {
+        long epoch = epochs.epochAt(System.currentTimeMillis());
+        int index = epochs.indexOf(epoch);
+
+        switch (epochs.claim(index, epoch)) {
+            case BucketEpochs.CLAIMED -> {
+                histograms[index].reset();
+                epochs.publish(index, epoch);
+                histograms[index].record(value);
+            }
+            case BucketEpochs.CURRENT -> histograms[index].record(value);
+            default -> {
+            }
         }
     }
 
-    public long getP50() {
-        return getPercentile(50.0);
+    public long getPercentile(double percentile) {
+        synchronized (scratch) {
+            long total = aggregate();
+            return total == 0 ? 0 : valueAt(total, percentile);
+        }
     }
 
-    public long getP95() {
-        return getPercentile(95.0);
+    /**
+     * Fills {@code values[i]} with the value at {@code percentiles[i]} from a single merge of the
+     * window, so all results describe the same set of samples.
+     */
+    public void getPercentiles(double[] percentiles, long[] values) {
+        synchronized (scratch) {
+            long total = aggregate();
+            for (int i = 0; i < percentiles.length; i++) {
+                values[i] = total == 0 ? 0 : valueAt(total, percentiles[i]);
+            }
+        }
     }
 
-    public long getP99() {
-        return getPercentile(99.0);
+    public void reset() {
+        for (int i = 0; i < histograms.length; i++) {
+            epochs.clear(i);
+            histograms[i].reset();
+        }
     }
 
-    private long getPercentile(double percentile) {
-        lock.readLock().lock();
-        try {
-            rotate();
-
-            long[] aggregatedCounts = new long[latencyBuckets.length + 1];
-            long totalCount = 0;
+    private long aggregate() {
+        Arrays.fill(scratch, 0);
 
-            for (LatencyHistogram histogram : histograms) {
-                long[] counts = histogram.getCounts();
-                for (int i = 0; i < counts.length; i++) {
-                    aggregatedCounts[i] += counts[i];
-                    totalCount += counts[i];
-                }
+        long currentEpoch = epochs.epochAt(System.currentTimeMillis());
+        long total = 0;
+        for (int i = 0; i < histograms.length; i++) {
+            if (epochs.isLive(i, currentEpoch)) {
+                total += histograms[i].addCountsTo(scratch);
             }
-
-            if (totalCount == 0) {
-                return 0;
-            }
-
-            long targetCount = (long) (totalCount * percentile / 100.0);
-            long cumulative = 0;
-
-            for (int i = 0; i < aggregatedCounts.length; i++) {
-                cumulative += aggregatedCounts[i];
-                if (cumulative >= targetCount) {
-                    if (i == 0) {
-                        return latencyBuckets[0];
-                    } else if (i >= latencyBuckets.length) {
-                        return latencyBuckets[latencyBuckets.length - 1];
-                    } else {
-                        return latencyBuckets[i];
-                    }
-                }
-            }
-
-            return latencyBuckets[latencyBuckets.length - 1];
-        } finally {
-            lock.readLock().unlock();
         }
+        return total;
     }
 
-    private void rotate() {
-        long now = Instant.now().toEpochMilli();
-        long elapsed = now - lastRotation;
-        long bucketDuration = (windowDuration * 1000L) / numBuckets;
-
-        if (elapsed >= bucketDuration) {
-            lock.readLock().unlock();
-            lock.writeLock().lock();
-            try {
-                elapsed = now - lastRotation;
-                if (elapsed >= bucketDuration) {
-                    int bucketsToRotate = (int) Math.min(elapsed / bucketDuration, numBuckets);
-
-                    for (int i = 0; i < bucketsToRotate; i++) {
-                        currentBucketIndex = (currentBucketIndex + 1) % numBuckets;
-                        histograms[currentBucketIndex].reset();
-                    }
-
-                    lastRotation = now;
-                }
-            } finally {
-                lock.readLock().lock();
-                lock.writeLock().unlock();
-            }
-        }
-    }
+    private long valueAt(long total, double percentile) {
+        long targetCount = LatencyHistogram.targetCount(total, percentile);
+        long cumulative = 0;
 
-    public void reset() {
-        lock.writeLock().lock();
-        try {
-            for (LatencyHistogram histogram : histograms) {
-                histogram.reset();
+        for (int i = 0; i < scratch.length; i++) {
+            cumulative += scratch[i];
+            if (cumulative >= targetCount) {
+                return histograms[0].bucketUpperBound(i);
             }
-            currentBucketIndex = 0;
-            lastRotation = Instant.now().toEpochMilli();
-        } finally {
-            lock.writeLock().unlock();
         }
+
+        return histograms[0].bucketUpperBound(scratch.length - 1);
     }
 }
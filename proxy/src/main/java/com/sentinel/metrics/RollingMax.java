@@ -0,0 +1,66 @@
+package com.sentinel.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Maximum over a sliding window of time buckets. Each bucket packs its epoch into the high 32 bits
+ * and its value into the low 32 bits of one long, so a writer that rolls the bucket over and a
+ * writer raising the maximum both CAS the pair and can never combine a new epoch with a stale
+ * value. Epochs are compared by their truncated difference.
+ */
+public class RollingMax {
+
+    private static final long VALUE_MASK = 0xFFFFFFFFL;
+
+    private final int numBuckets;
+    private final long bucketDurationMs;
+    private final AtomicLongArray buckets;
+
+    public RollingMax(int windowDurationSeconds, int numBuckets) {
+        this.numBuckets = numBuckets;
+        this.bucketDurationMs = (windowDurationSeconds * 1000L) / numBuckets;
+        this.buckets = new AtomicLongArray(numBuckets);
+        // Start every bucket one window in the past, so the first writer sees it as expired.
+        long expired = (long) (int) (System.currentTimeMillis() / bucketDurationMs - numBuckets) << 32;
+        for (int i = 0; i < numBuckets; i++) {
+            buckets.set(i, expired);
+        }
+    }
+
+    public void update(long value) {
+        long epoch = System.currentTimeMillis() / bucketDurationMs;
+        int index = (int) (epoch % numBuckets);
+        long updated = ((long) (int) epoch << 32) | Math.min(Math.max(value, 0), VALUE_MASK);
+
+        long current;
+        do {
+            current = buckets.get(index);
+            int age = (int) epoch - epochOf(current);
+            // A writer delayed past a rollover must not overwrite the newer bucket.
+            if (age < 0 || age == 0 && valueOf(current) >= valueOf(updated)) {
+                return;
+            }
+        } while (!buckets.compareAndSet(index, current, updated));
+    }
+
+    public long max() {
+        int currentEpoch = (int) (System.currentTimeMillis() / bucketDurationMs);
+        long max = 0;
+        for (int i = 0; i < numBuckets; i++) {
+            long bucket = buckets.get(i);
+            int age = currentEpoch - epochOf(bucket);
+            if (age >= 0 && age < numBuckets) {
+                max = Math.max(max, valueOf(bucket));
+            }
+        }
+        return max;
+    }
+
+    private static int epochOf(long bucket) {
+        return (int) (bucket >>> 32);
+    }
+
+    private static long valueOf(long bucket) {
+        return bucket & VALUE_MASK;
+    }
+}
@@ -1,7 +1,9 @@
 package com.sentinel.model;
 
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Data
 public class Backend {
@@ -15,6 +17,19 @@ public class Backend {
     private volatile Instant rampUpStartTime;
     private volatile int rampUpPercentage;
 
+    /**
+     * Dense slot assigned by the backend pool while the backend is registered, so per-request
+     * bookkeeping can index arrays instead of hashing the id. -1 when not in a pool.
+     */
+    private volatile int index = -1;
+
+    /**
+     * Requests sent to this backend that have not finished yet. Its pool index is only reused
+     * once this drops to zero after removal.
+     */
+    @EqualsAndHashCode.Exclude
+    private final AtomicInteger activeRequests = new AtomicInteger();
+
     public Backend(String id, String url, int initialWeight) {
         this.id = id;
         this.url = url;
@@ -26,6 +41,18 @@ public class Backend {
         this.rampUpPercentage = 100;
     }
 
+    public void requestStarted() {
+        activeRequests.incrementAndGet();
+    }
+
+    public void requestFinished() {
+        activeRequests.decrementAndGet();
+    }
+
+    public int getActiveRequests() {
+        return activeRequests.get();
+    }
+
     public boolean isAvailable() {
         return circuitState == CircuitState.CLOSED || circuitState == CircuitState.HALF_OPEN;
     }
@@ -41,11 +68,17 @@ public class Backend {
         }
     }
 
-    public void transitionCircuit(CircuitState newState) {
-        if (this.circuitState != newState) {
-            this.circuitState = newState;
-            this.lastStateChange = Instant.now();
+    /**
+     * Moves the circuit from {@code expected} to {@code newState}; returns false, leaving the
+     * circuit untouched, if it is no longer in {@code expected}.
+     */
+    public synchronized boolean transitionCircuit(CircuitState expected, CircuitState newState) {
+        if (this.circuitState != expected || expected == newState) {
+            return false;
         }
+        this.circuitState = newState;
+        this.lastStateChange = Instant.now();
+        return true;
     }
 
     public int getEffectiveWeight() {
@@ -0,0 +1,86 @@
+package com.sentinel.proxy;
+
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Response sink for one attempt of a request that may be retried or hedged. All attempts of a
+ * request share an owner reference and the first one to receive a deliverable response claims the
+ * client response; later attempts lose and abort their body stream. Responses with a retryable
+ * status are discarded instead of claiming, so another backend can still answer.
+ */
+final class AttemptSink implements ResponseSink {
+
+    private static final int PENDING = 0;
+    private static final int WRITING = 1;
+    private static final int DISCARDED = 2;
+    private static final int LOST = 3;
+
+    private final ResponseSink delegate;
+    private final AtomicReference<AttemptSink> owner;
+    private final RetryPolicy retryPolicy;
+    private volatile int state = PENDING;
+
+    AttemptSink(ResponseSink delegate, AtomicReference<AttemptSink> owner, RetryPolicy retryPolicy) {
+        this.delegate = delegate;
+        this.owner = owner;
+        this.retryPolicy = retryPolicy;
+    }
+
+    @Override
+    public void begin(int statusCode, HttpHeaders headers) {
+        if (retryPolicy.isRetryableStatus(statusCode)) {
+            state = DISCARDED;
+        } else if (owner.compareAndSet(null, this)) {
+            state = WRITING;
+            delegate.begin(statusCode, headers);
+        } else {
+            state = LOST;
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer buffer) throws IOException {
+        switch (state) {
+            case WRITING -> delegate.write(buffer);
+            // Read to the end so the connection stays reusable.
+            case DISCARDED -> buffer.position(buffer.limit());
+            default -> throw new IOException("Response already delivered by another attempt");
+        }
+    }
+
+    @Override
+    public void end() throws IOException {
+        if (state == WRITING) {
+            delegate.end();
+        }
+    }
+
+    @Override
+    public void abort() throws IOException {
+        if (state == WRITING) {
+            delegate.abort();
+        }
+    }
+
+    @Override
+    public boolean isBegun() {
+        return state == WRITING;
+    }
+
+    /**
+     * True once this attempt has started writing the client response.
+     */
+    boolean isDelivering() {
+        return state == WRITING;
+    }
+
+    /**
+     * True if another attempt claimed the client response first.
+     */
+    boolean isLost() {
+        return state == LOST;
+    }
+}
@@ -0,0 +1,139 @@
+package com.sentinel.proxy;
+
+import com.sentinel.metrics.BackendMetrics;
+
+import java.net.http.HttpClient;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection permits for one backend. Requests go through the HttpClient shared by all backends,
+ * which keeps idle connections per origin; the permits cap how many requests one backend can have
+ * in flight, and queue requests beyond that. Over HTTP/1.1 that is the number of connections in
+ * use; over HTTP/2 it is the number of concurrent streams, which share far fewer connections.
+ * Closing drops only the permits; the client closes idle sockets on its own keep-alive timeout.
+ */
+public class BackendConnections {
+
+    private final String backendId;
+    private final HttpClient httpClient;
+    private final int maxConnections;
+    private final BackendMetrics metrics;
+    private final Queue<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+
+    private int inUse;
+    private boolean closed;
+    private volatile long lastUsedNanos = System.nanoTime();
+
+    public BackendConnections(String backendId, HttpClient httpClient, int maxConnections, BackendMetrics metrics) {
+        this.backendId = backendId;
+        this.httpClient = httpClient;
+        this.maxConnections = maxConnections;
+        this.metrics = metrics;
+        metrics.updatePoolOccupancy(0, maxConnections);
+    }
+
+    public CompletableFuture<Void> acquire(long timeoutMs) {
+        lastUsedNanos = System.nanoTime();
+        CompletableFuture<Void> waiter;
+
+        synchronized (this) {
+            if (closed) {
+                return CompletableFuture.failedFuture(
+                        new IllegalStateException("Connection pool for " + backendId + " is closed"));
+            }
+            if (inUse < maxConnections) {
+                inUse++;
+                metrics.updatePoolOccupancy(inUse, maxConnections);
+                return CompletableFuture.completedFuture(null);
+            }
+            waiter = new CompletableFuture<>();
+            waiters.add(waiter);
+        }
+
+        return waiter.orTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean acquireBlocking(long timeoutMs) throws InterruptedException {
+        CompletableFuture<Void> permit = acquire(timeoutMs);
+        try {
+            permit.get();
+            return true;
+        } catch (ExecutionException e) {
+            // Timed out: the waiter completed exceptionally, so release() will skip it.
+            return false;
+        } catch (InterruptedException e) {
+            // Withdraw the waiter, or give back the permit if release() handed it over first.
+            if (!permit.cancel(false) && !permit.isCompletedExceptionally()) {
+                release();
+            }
+            throw e;
+        }
+    }
+
+    public void release() {
+        lastUsedNanos = System.nanoTime();
+
+        while (true) {
+            CompletableFuture<Void> next;
+            synchronized (this) {
+                next = waiters.poll();
+                if (next == null) {
+                    inUse--;
+                    metrics.updatePoolOccupancy(inUse, maxConnections);
+                    return;
+                }
+            }
+            if (next.complete(null)) {
+                return;
+            }
+        }
+    }
+
+    synchronized boolean closeIfIdle(long idleTimeoutNanos) {
+        if (inUse > 0 || System.nanoTime() - lastUsedNanos < idleTimeoutNanos) {
+            return false;
+        }
+        close();
+        return true;
+    }
+
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        metrics.updatePoolOccupancy(0, maxConnections);
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    public long getLastUsedNanos() {
+        return lastUsedNanos;
+    }
+
+    public String getBackendId() {
+        return backendId;
+    }
+
+    public synchronized int getInUse() {
+        return inUse;
+    }
+
+    public synchronized int getWaiting() {
+        return waiters.size();
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+}
@@ -14,24 +14,36 @@ public class BackendPool {
 
     private final Map<String, Backend> backends = new ConcurrentHashMap<>();
     private final AtomicInteger totalWeight = new AtomicInteger(0);
+    private volatile RoutingTable routingTable = RoutingTable.EMPTY;
+    private final BitSet assignedIndices = new BitSet();
+    // Removed backends whose index stays taken until their in-flight requests have finished.
+    private final List<Retired> retired = new ArrayList<>();
+    // Copy-on-write, so per-tick readers index it without locking.
+    private volatile Backend[] backendsByIndex = new Backend[0];
 
     public void registerBackend(String id, String url, int initialWeight) {
         Backend backend = new Backend(id, url, initialWeight);
+        assignIndex(backend);
         backends.put(id, backend);
         recalculateTotalWeight();
+        rebuildRoutingTable();
         log.info("Registered backend: {} at {} with weight {}", id, url, initialWeight);
     }
 
     public void addBackend(Backend backend) {
+        assignIndex(backend);
         backends.put(backend.getId(), backend);
         recalculateTotalWeight();
+        rebuildRoutingTable();
         log.info("Added backend: {} at {} with weight {}", backend.getId(), backend.getUrl(), backend.getWeight());
     }
 
     public boolean removeBackend(String id) {
         Backend removed = backends.remove(id);
         if (removed != null) {
+            releaseIndex(removed);
             recalculateTotalWeight();
+            rebuildRoutingTable();
             log.info("Removed backend: {}", id);
             return true;
         }
@@ -42,8 +54,34 @@ public class BackendPool {
         return Optional.ofNullable(backends.get(id));
     }
 
+    /**
+     * All registered backends in index order.
+     */
     public List<Backend> getAllBackends() {
-        return new ArrayList<>(backends.values());
+        Backend[] byIndex = backendsByIndex;
+        List<Backend> all = new ArrayList<>(byIndex.length);
+        for (Backend backend : byIndex) {
+            if (backend != null) {
+                all.add(backend);
+            }
+        }
+        return all;
+    }
+
+    /**
+     * The backend holding {@code index}, or null if the slot is free.
+     */
+    public Backend getBackend(int index) {
+        Backend[] byIndex = backendsByIndex;
+        return index >= 0 && index < byIndex.length ? byIndex[index] : null;
+    }
+
+    /**
+     * One past the highest index ever handed out; per-backend arrays sized to this fit every
+     * registered backend.
+     */
+    public int getIndexCapacity() {
+        return backendsByIndex.length;
     }
 
     public List<Backend> getAvailableBackends() {
@@ -57,14 +95,76 @@ public class BackendPool {
             int oldWeight = backend.getWeight();
             backend.updateWeight(newWeight);
             recalculateTotalWeight();
+            rebuildRoutingTable();
             log.debug("Updated weight for {}: {} -> {}", backendId, oldWeight, newWeight);
         });
     }
 
+    /**
+     * Sets a weight without rebuilding the routing table, for callers that change many weights
+     * and then call {@link #refreshRoutingTable()} once.
+     */
+    public void setWeight(Backend backend, int newWeight) {
+        backend.updateWeight(newWeight);
+    }
+
+    public RoutingTable getRoutingTable() {
+        return routingTable;
+    }
+
+    public void refreshRoutingTable() {
+        if (!routingTable.matches(backends.values())) {
+            recalculateTotalWeight();
+            rebuildRoutingTable();
+        }
+    }
+
     public int getTotalWeight() {
         return totalWeight.get();
     }
 
+    /**
+     * Hands out the lowest free index so indices stay dense; a removed backend's index is reused
+     * by a later backend once no request to the removed one is still in flight.
+     */
+    private synchronized void assignIndex(Backend backend) {
+        Backend existing = backends.get(backend.getId());
+        int index;
+        if (existing != null) {
+            index = existing.getIndex();
+        } else {
+            reclaimRetiredIndices();
+            index = assignedIndices.nextClearBit(0);
+            assignedIndices.set(index);
+        }
+        backend.setIndex(index);
+
+        Backend[] byIndex = Arrays.copyOf(backendsByIndex, Math.max(backendsByIndex.length, index + 1));
+        byIndex[index] = backend;
+        backendsByIndex = byIndex;
+    }
+
+    private synchronized void releaseIndex(Backend backend) {
+        Backend[] byIndex = backendsByIndex.clone();
+        if (byIndex[backend.getIndex()] == backend) {
+            byIndex[backend.getIndex()] = null;
+        }
+        backendsByIndex = byIndex;
+
+        retired.add(new Retired(backend, backend.getIndex()));
+        backend.setIndex(-1);
+    }
+
+    private void reclaimRetiredIndices() {
+        retired.removeIf(entry -> {
+            if (entry.backend().getActiveRequests() > 0) {
+                return false;
+            }
+            assignedIndices.clear(entry.index());
+            return true;
+        });
+    }
+
     private void recalculateTotalWeight() {
         int total = backends.values().stream()
                 .filter(Backend::isAvailable)
@@ -73,6 +173,12 @@ public class BackendPool {
         totalWeight.set(total);
     }
 
+    private synchronized void rebuildRoutingTable() {
+        routingTable = RoutingTable.build(backends.values());
+        log.debug("Rebuilt routing table: {} backends, total effective weight {}",
+                routingTable.size(), routingTable.getTotalWeight());
+    }
+
     public int size() {
         return backends.size();
     }
@@ -80,4 +186,7 @@ public class BackendPool {
     public boolean isEmpty() {
         return backends.isEmpty();
     }
+
+    private record Retired(Backend backend, int index) {
+    }
 }
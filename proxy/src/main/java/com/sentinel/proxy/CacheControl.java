@@ -0,0 +1,75 @@
+package com.sentinel.proxy;
+
+import java.util.List;
+
+/**
+ * The Cache-Control directives a shared cache acts on. Durations are in seconds, -1 when the
+ * directive is absent; {@code proxy-revalidate} is folded into {@code mustRevalidate}.
+ */
+record CacheControl(boolean noStore, boolean noCache, boolean isPrivate, boolean mustRevalidate,
+                    long maxAge, long sMaxAge, long staleWhileRevalidate, long staleIfError) {
+
+    static final CacheControl NONE = new CacheControl(false, false, false, false, -1, -1, -1, -1);
+
+    static CacheControl parse(List<String> values) {
+        if (values.isEmpty()) {
+            return NONE;
+        }
+
+        boolean noStore = false;
+        boolean noCache = false;
+        boolean isPrivate = false;
+        boolean mustRevalidate = false;
+        long maxAge = -1;
+        long sMaxAge = -1;
+        long staleWhileRevalidate = -1;
+        long staleIfError = -1;
+
+        for (String value : values) {
+            for (String directive : value.split(",")) {
+                String token = directive.trim();
+                int equals = token.indexOf('=');
+                String name = (equals < 0 ? token : token.substring(0, equals)).trim().toLowerCase();
+                String argument = equals < 0 ? null : token.substring(equals + 1).trim();
+
+                switch (name) {
+                    case "no-store" -> noStore = true;
+                    case "no-cache" -> noCache = true;
+                    case "private" -> isPrivate = true;
+                    case "must-revalidate", "proxy-revalidate" -> mustRevalidate = true;
+                    case "max-age" -> maxAge = seconds(argument);
+                    case "s-maxage" -> sMaxAge = seconds(argument);
+                    case "stale-while-revalidate" -> staleWhileRevalidate = seconds(argument);
+                    case "stale-if-error" -> staleIfError = seconds(argument);
+                    default -> {
+                    }
+                }
+            }
+        }
+
+        return new CacheControl(noStore, noCache, isPrivate, mustRevalidate,
+                maxAge, sMaxAge, staleWhileRevalidate, staleIfError);
+    }
+
+    /**
+     * Freshness lifetime granted to a shared cache, -1 if the directives do not set one.
+     */
+    long sharedMaxAge() {
+        return sMaxAge >= 0 ? sMaxAge : maxAge;
+    }
+
+    private static long seconds(String argument) {
+        if (argument == null) {
+            return -1;
+        }
+        if (argument.length() > 1 && argument.startsWith("\"") && argument.endsWith("\"")) {
+            argument = argument.substring(1, argument.length() - 1);
+        }
+        try {
+            return Math.max(0, Long.parseLong(argument));
+        } catch (NumberFormatException e) {
+            // Unparseable durations are treated as already expired.
+            return 0;
+        }
+    }
+}
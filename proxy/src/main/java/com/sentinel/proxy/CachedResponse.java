@@ -0,0 +1,145 @@
+package com.sentinel.proxy;
+
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One stored response. The body lives in a read-only direct buffer outside the Java heap, so a
+ * large cache does not lengthen GC pauses; every reader writes from its own duplicate. Times are
+ * {@link System#nanoTime} based.
+ */
+final class CachedResponse {
+
+    private static final int HEADER_OVERHEAD = 64;
+
+    private final int statusCode;
+    private final HttpHeaders headers;
+    private final ByteBuffer body;
+    private final long storedAtNanos;
+    private final long initialAgeNanos;
+    private final long freshNanos;
+    private final long staleWhileRevalidateNanos;
+    private final long staleIfErrorNanos;
+    private final boolean mustRevalidate;
+    private final String[] varyNames;
+    private final String[] varyValues;
+    private final int weight;
+
+    CachedResponse(int statusCode, HttpHeaders headers, ByteBuffer body, long storedAtNanos, long initialAgeNanos,
+                   long freshNanos, CacheControl cacheControl, String[] varyNames, String[] varyValues) {
+        this.statusCode = statusCode;
+        this.headers = headers;
+        this.body = body;
+        this.storedAtNanos = storedAtNanos;
+        this.initialAgeNanos = initialAgeNanos;
+        this.freshNanos = freshNanos;
+        this.staleWhileRevalidateNanos = TimeUnit.SECONDS.toNanos(Math.max(0, cacheControl.staleWhileRevalidate()));
+        this.staleIfErrorNanos = TimeUnit.SECONDS.toNanos(Math.max(0, cacheControl.staleIfError()));
+        this.mustRevalidate = cacheControl.mustRevalidate();
+        this.varyNames = varyNames;
+        this.varyValues = varyValues;
+        this.weight = body.capacity() + headerSize(headers) + HEADER_OVERHEAD;
+    }
+
+    /**
+     * Starts replaying this response into {@code sink} with its current Age.
+     *
+     * @param cacheStatus value of the {@code X-Cache} header sent with it
+     */
+    void begin(ResponseSink sink, String cacheStatus, long nowNanos) {
+        Map<String, List<String>> map = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        map.putAll(headers.map());
+        map.put("Age", List.of(Long.toString(TimeUnit.NANOSECONDS.toSeconds(ageNanos(nowNanos)))));
+        map.put("X-Cache", List.of(cacheStatus));
+        sink.begin(statusCode, HttpHeaders.of(map, (name, value) -> true));
+    }
+
+    /**
+     * Writes the body after {@link #begin}, leaving the sink open.
+     */
+    void writeBody(ResponseSink sink) throws IOException {
+        if (body.capacity() > 0) {
+            sink.write(body.duplicate());
+        }
+    }
+
+    boolean isFresh(long nowNanos) {
+        return ageNanos(nowNanos) < freshNanos;
+    }
+
+    /**
+     * How long this response has been stale, negative while it is fresh.
+     */
+    long staleNanos(long nowNanos) {
+        return ageNanos(nowNanos) - freshNanos;
+    }
+
+    /**
+     * True if the request headers selected by the response's Vary header match the ones this
+     * response was stored for.
+     */
+    boolean matches(String[] requestHeaders) {
+        for (int i = 0; i < varyNames.length; i++) {
+            String value = ResponseCache.headerValue(requestHeaders, varyNames[i]);
+            if (value == null ? varyValues[i] != null : !value.equals(varyValues[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int getStatusCode() {
+        return statusCode;
+    }
+
+    HttpHeaders getHeaders() {
+        return headers;
+    }
+
+    ByteBuffer getBody() {
+        return body;
+    }
+
+    long getStaleWhileRevalidateNanos() {
+        return staleWhileRevalidateNanos;
+    }
+
+    long getStaleIfErrorNanos() {
+        return staleIfErrorNanos;
+    }
+
+    boolean isMustRevalidate() {
+        return mustRevalidate;
+    }
+
+    String[] getVaryNames() {
+        return varyNames;
+    }
+
+    String[] getVaryValues() {
+        return varyValues;
+    }
+
+    int getWeight() {
+        return weight;
+    }
+
+    private long ageNanos(long nowNanos) {
+        return initialAgeNanos + nowNanos - storedAtNanos;
+    }
+
+    private static int headerSize(HttpHeaders headers) {
+        int size = 0;
+        for (Map.Entry<String, List<String>> header : headers.map().entrySet()) {
+            for (String value : header.getValue()) {
+                size += 2 * (header.getKey().length() + value.length());
+            }
+        }
+        return size;
+    }
+}
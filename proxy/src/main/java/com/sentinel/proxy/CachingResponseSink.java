@@ -0,0 +1,135 @@
+package com.sentinel.proxy;
+
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Streams an upstream response to the client while copying a storable one into the
+ * {@link ResponseCache}. It also answers in place of the upstream response in two cases. A 304 to
+ * the cache's own conditional request is answered with the refreshed stored response. A server
+ * error, or a failure before any response, is answered with the stale one when stale-if-error
+ * allows.
+ */
+final class CachingResponseSink implements ResponseSink {
+
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+
+    private final ResponseCache cache;
+    private final ResponseCache.Lookup lookup;
+    private final ResponseSink delegate;
+    private final boolean storing;
+    private volatile boolean begun;
+    private CachedResponse replacement;
+    private int statusCode;
+    private HttpHeaders headers;
+    private byte[] body;
+    private int length;
+
+    /**
+     * @param storing false for a response another request already stored, which is only
+     *                translated for this request's client
+     */
+    CachingResponseSink(ResponseCache cache, ResponseCache.Lookup lookup, ResponseSink delegate, boolean storing) {
+        this.cache = cache;
+        this.lookup = lookup;
+        this.delegate = delegate;
+        this.storing = storing;
+    }
+
+    @Override
+    public void begin(int statusCode, HttpHeaders headers) {
+        begun = true;
+        if (statusCode == 304 && lookup.validating()) {
+            replace(storing ? cache.refresh(lookup, headers) : lookup.entry(), "REVALIDATED");
+            return;
+        }
+        if (statusCode >= 500 && lookup.staleOnError()) {
+            cache.recordStaleOnError(lookup.entry());
+            replace(lookup.entry(), "STALE");
+            return;
+        }
+
+        delegate.begin(statusCode, headers);
+        if (storing && cache.isStorable(statusCode, headers)) {
+            this.statusCode = statusCode;
+            this.headers = headers;
+            long contentLength = headers.firstValueAsLong("Content-Length").orElse(INITIAL_CAPACITY);
+            this.body = new byte[(int) Math.min(contentLength, cache.getMaxEntryBytes())];
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer buffer) throws IOException {
+        if (replacement != null) {
+            buffer.position(buffer.limit());
+            return;
+        }
+        if (body != null) {
+            capture(buffer);
+        }
+        delegate.write(buffer);
+    }
+
+    @Override
+    public void end() throws IOException {
+        if (replacement != null) {
+            replacement.writeBody(delegate);
+        } else if (body != null) {
+            cache.store(lookup, statusCode, headers, body, length);
+            body = null;
+        }
+        delegate.end();
+    }
+
+    @Override
+    public void abort() throws IOException {
+        if (replacement != null) {
+            // Only the discarded upstream body failed; the stored one is still whole.
+            end();
+            return;
+        }
+        body = null;
+        delegate.abort();
+    }
+
+    @Override
+    public boolean isBegun() {
+        return begun;
+    }
+
+    /**
+     * Answers with the stale response when the proxy fails the request before any upstream
+     * response arrived. Returns false if stale-if-error does not apply, leaving the sink untouched.
+     */
+    boolean serveStale() throws IOException {
+        if (begun || !lookup.staleOnError()) {
+            return false;
+        }
+        begun = true;
+        cache.recordStaleOnError(lookup.entry());
+        replace(lookup.entry(), "STALE");
+        end();
+        return true;
+    }
+
+    private void replace(CachedResponse entry, String cacheStatus) {
+        replacement = entry;
+        entry.begin(delegate, cacheStatus, System.nanoTime());
+    }
+
+    private void capture(ByteBuffer buffer) {
+        int size = buffer.remaining();
+        if (length + size > cache.getMaxEntryBytes()) {
+            body = null;
+            return;
+        }
+        if (length + size > body.length) {
+            int grown = (int) Math.min(Math.max(body.length * 2L, length + size), cache.getMaxEntryBytes());
+            body = Arrays.copyOf(body, grown);
+        }
+        buffer.get(buffer.position(), body, length, size);
+        length += size;
+    }
+}
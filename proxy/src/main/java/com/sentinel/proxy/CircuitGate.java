@@ -0,0 +1,187 @@
+package com.sentinel.proxy;
+
+import com.sentinel.metrics.MetricsCollector;
+import com.sentinel.model.Backend;
+import com.sentinel.model.CircuitState;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-request half of the circuit breaker. Admission and outcome accounting run inline on the
+ * proxy path without locks: a streak of connection failures opens a closed circuit on the request
+ * that completes it, and a half-open circuit admits an exact budget of probe requests through a
+ * bounded semaphore, closing once all of them succeed and reopening on the first failure.
+ * <p>
+ * The control loop's windowed rules and the OPEN to HALF_OPEN retry also go through this class,
+ * so every circuit transition happens in one place.
+ */
+@Slf4j
+@Component
+public class CircuitGate {
+
+    public enum Admission {
+        ADMITTED,
+        PROBE,
+        REJECTED
+    }
+
+    private final int connectFailureThreshold;
+    private final int probeRequests;
+    private final long retryDelayNanos;
+    private final BackendPool backendPool;
+
+    private final Map<String, GateState> states = new ConcurrentHashMap<>();
+
+    public CircuitGate(
+            @Value("${sentinel.control.circuitBreaker.connectFailureThreshold:3}") int connectFailureThreshold,
+            @Value("${sentinel.control.circuitBreaker.probeRequests:5}") int probeRequests,
+            @Value("${sentinel.control.circuitBreaker.retryDelay:10}") int retryDelaySeconds,
+            BackendPool backendPool) {
+        this.connectFailureThreshold = connectFailureThreshold;
+        this.probeRequests = probeRequests;
+        this.retryDelayNanos = TimeUnit.SECONDS.toNanos(retryDelaySeconds);
+        this.backendPool = backendPool;
+
+        log.info("CircuitGate connectFailureThreshold={}, probeRequests={}, retryDelay={}s",
+                connectFailureThreshold, probeRequests, retryDelaySeconds);
+    }
+
+    public Admission tryAcquire(Backend backend) {
+        return switch (backend.getCircuitState()) {
+            case CLOSED -> Admission.ADMITTED;
+            case HALF_OPEN -> stateFor(backend).probePermits.tryAcquire() ? Admission.PROBE : Admission.REJECTED;
+            case OPEN -> Admission.REJECTED;
+        };
+    }
+
+    /**
+     * Returns a permit taken by {@link #tryAcquire} for a request that was never sent.
+     */
+    public void cancel(Backend backend, Admission admission) {
+        if (admission == Admission.PROBE) {
+            stateFor(backend).probePermits.release();
+        }
+    }
+
+    public void onComplete(Backend backend, Admission admission, HttpProxyClient.ProxyResult result) {
+        GateState state = stateFor(backend);
+        int flags = result.flags();
+
+        if ((flags & MetricsCollector.FLAG_CONNECT_FAILURE) != 0) {
+            if (state.consecutiveConnectFailures.incrementAndGet() >= connectFailureThreshold) {
+                open(backend, "consecutive connection failures");
+            }
+        } else if (state.consecutiveConnectFailures.get() != 0) {
+            state.consecutiveConnectFailures.set(0);
+        }
+
+        if (admission != Admission.PROBE) {
+            return;
+        }
+
+        boolean failed = (flags & MetricsCollector.FLAG_ERROR) != 0
+                || (result.statusCode() >= 500 && result.statusCode() < 600);
+        if (failed) {
+            transition(backend, state, CircuitState.HALF_OPEN, CircuitState.OPEN, retryDelayNanos, "probe failed");
+        } else if (state.probeSuccesses.incrementAndGet() >= probeRequests) {
+            transition(backend, state, CircuitState.HALF_OPEN, CircuitState.CLOSED, 0, "probes succeeded");
+        }
+    }
+
+    /**
+     * Opens a closed circuit. Returns true if this call made the transition.
+     */
+    public boolean open(Backend backend, String reason) {
+        return open(backend, reason, 0);
+    }
+
+    /**
+     * Opens a closed circuit for at least {@code minOpenNanos}, or the retry delay if that is
+     * longer. Returns true if this call made the transition.
+     */
+    public boolean open(Backend backend, String reason, long minOpenNanos) {
+        return transition(backend, stateFor(backend), CircuitState.CLOSED, CircuitState.OPEN,
+                Math.max(retryDelayNanos, minOpenNanos), reason);
+    }
+
+    /**
+     * Moves an open circuit to HALF_OPEN with a fresh probe budget once it has been open for
+     * long enough. Returns true if this call made the transition.
+     */
+    public boolean tryHalfOpen(Backend backend) {
+        GateState state = stateFor(backend);
+        if (backend.getCircuitState() != CircuitState.OPEN
+                || System.nanoTime() - state.openedAtNanos < state.openNanos) {
+            return false;
+        }
+
+        state.probeSuccesses.set(0);
+        state.probePermits = new Semaphore(probeRequests);
+        return transition(backend, state, CircuitState.OPEN, CircuitState.HALF_OPEN, 0, "open time elapsed");
+    }
+
+    /**
+     * Drops the state of a removed backend.
+     */
+    public void remove(String backendId) {
+        states.remove(backendId);
+    }
+
+    public int getProbeRequests() {
+        return probeRequests;
+    }
+
+    /**
+     * @param openNanos how long the circuit stays open, when {@code to} is OPEN
+     */
+    private boolean transition(Backend backend, GateState state, CircuitState from, CircuitState to,
+                               long openNanos, String reason) {
+        if (backend.getCircuitState() != from) {
+            return false;
+        }
+        if (to == CircuitState.OPEN) {
+            // Stamped before the transition is visible so tryHalfOpen never reads a stale time.
+            state.openNanos = openNanos;
+            state.openedAtNanos = System.nanoTime();
+        }
+        if (!backend.transitionCircuit(from, to)) {
+            return false;
+        }
+
+        if (to == CircuitState.CLOSED) {
+            state.consecutiveConnectFailures.set(0);
+        }
+
+        backendPool.refreshRoutingTable();
+        log.info("Circuit breaker transition: backend={}, {} -> {} ({})", backend.getId(), from, to, reason);
+        return true;
+    }
+
+    private GateState stateFor(Backend backend) {
+        GateState state = states.get(backend.getId());
+        if (state != null) {
+            return state;
+        }
+        // Requests still in flight to a removed backend get a throwaway state rather than adding
+        // its entry back.
+        if (backendPool.getBackend(backend.getId()).orElse(null) != backend) {
+            return new GateState();
+        }
+        return states.computeIfAbsent(backend.getId(), id -> new GateState());
+    }
+
+    private static final class GateState {
+        final AtomicInteger consecutiveConnectFailures = new AtomicInteger();
+        final AtomicInteger probeSuccesses = new AtomicInteger();
+        volatile Semaphore probePermits = new Semaphore(0);
+        volatile long openedAtNanos;
+        volatile long openNanos;
+    }
+}
@@ -0,0 +1,89 @@
+package com.sentinel.proxy;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Slf4j
+@Component
+public class ConcurrencyLimiter {
+
+    private final boolean enabled;
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+
+    private final Map<String, GradientLimit> limits = new ConcurrentHashMap<>();
+
+    public ConcurrencyLimiter(
+            @Value("${sentinel.proxy.concurrencyLimit.enabled:false}") boolean enabled,
+            @Value("${sentinel.proxy.concurrencyLimit.initialLimit:20}") int initialLimit,
+            @Value("${sentinel.proxy.concurrencyLimit.minLimit:5}") int minLimit,
+            @Value("${sentinel.proxy.concurrencyLimit.maxLimit:1000}") int maxLimit) {
+        this.enabled = enabled;
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+
+        log.info("ConcurrencyLimiter enabled={}, initialLimit={}, minLimit={}, maxLimit={}",
+                enabled, initialLimit, minLimit, maxLimit);
+    }
+
+    public boolean tryAcquire(String backendId) {
+        if (!enabled) {
+            return true;
+        }
+
+        boolean acquired = limitFor(backendId).tryAcquire();
+        if (!acquired) {
+            log.debug("Concurrency limit reached for {}: limit={}", backendId, limitFor(backendId).getLimit());
+        }
+        return acquired;
+    }
+
+    public void release(String backendId, long latencyNanos, boolean timeout) {
+        if (!enabled) {
+            return;
+        }
+        GradientLimit limit = limits.get(backendId);
+        if (limit != null) {
+            limit.release(latencyNanos, timeout);
+        }
+    }
+
+    public void cancel(String backendId) {
+        if (!enabled) {
+            return;
+        }
+        GradientLimit limit = limits.get(backendId);
+        if (limit != null) {
+            limit.cancel();
+        }
+    }
+
+    /**
+     * Drops the limit of a removed backend. Requests still in flight to it release nothing.
+     */
+    public void remove(String backendId) {
+        limits.remove(backendId);
+    }
+
+    public Optional<GradientLimit> getLimit(String backendId) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(limits.get(backendId));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    private GradientLimit limitFor(String backendId) {
+        return limits.computeIfAbsent(backendId, id -> new GradientLimit(initialLimit, minLimit, maxLimit));
+    }
+}
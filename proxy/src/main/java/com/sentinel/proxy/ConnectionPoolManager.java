@@ -0,0 +1,221 @@
+package com.sentinel.proxy;
+
+import com.sentinel.metrics.MetricsRegistry;
+import com.sentinel.model.Backend;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@Component
+public class ConnectionPoolManager {
+
+    private final long connectTimeoutMs;
+    private final int maxConnectionsPerBackend;
+    private final boolean http2;
+    private final long idleTimeoutNanos;
+    private final int warmupConnections;
+    private final String warmupPath;
+    private final ExecutorService executor;
+    private final HttpClient httpClient;
+    private final MetricsRegistry metricsRegistry;
+    private final BackendPool backendPool;
+
+    private final Map<String, BackendConnections> pools = new ConcurrentHashMap<>();
+    private long lastEvictionRunNanos = System.nanoTime();
+
+    public ConnectionPoolManager(
+            @Value("${sentinel.proxy.requestTimeout:5000}") long connectTimeoutMs,
+            @Value("${sentinel.proxy.maxConnections:2000}") int maxThreads,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+            @Value("${sentinel.proxy.pool.maxConnectionsPerBackend:500}") int maxConnectionsPerBackend,
+            @Value("${sentinel.proxy.pool.http2:false}") boolean http2,
+            @Value("${sentinel.proxy.pool.idleTimeout:60}") int idleTimeoutSeconds,
+            @Value("${sentinel.proxy.pool.warmupConnections:4}") int warmupConnections,
+            @Value("${sentinel.proxy.pool.warmupPath:/}") String warmupPath,
+            MetricsRegistry metricsRegistry,
+            BackendPool backendPool) {
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.maxConnectionsPerBackend = maxConnectionsPerBackend;
+        this.http2 = http2;
+        this.idleTimeoutNanos = TimeUnit.SECONDS.toNanos(idleTimeoutSeconds);
+        this.warmupConnections = warmupConnections;
+        this.warmupPath = warmupPath;
+        this.metricsRegistry = metricsRegistry;
+        this.backendPool = backendPool;
+        this.executor = virtualThreads
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(maxThreads);
+        // One client, and so one selector thread, for every backend. The JDK pools connections per
+        // origin inside it; BackendConnections caps how many each backend may use at once.
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .version(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .executor(executor)
+                .build();
+
+        log.info("ConnectionPoolManager initialized: {} concurrent requests per backend, http2={}, idleTimeout={}s, "
+                        + "virtualThreads={}", maxConnectionsPerBackend, http2, idleTimeoutSeconds, virtualThreads);
+    }
+
+    public BackendConnections connectionsFor(Backend backend) {
+        BackendConnections connections = pools.get(backend.getId());
+        if (connections != null && !connections.isClosed()) {
+            return connections;
+        }
+
+        return pools.compute(backend.getId(), (id, existing) ->
+                existing == null || existing.isClosed() ? createConnections(id) : existing);
+    }
+
+    /**
+     * Takes a connection permit from the backend's pool. The pool can be evicted between looking it
+     * up and acquiring from it; a closed pool fails the acquire at once, and the permit is then
+     * taken from the pool that replaces it.
+     */
+    public CompletableFuture<BackendConnections> acquire(Backend backend, long timeoutMs) {
+        while (true) {
+            BackendConnections connections = connectionsFor(backend);
+            CompletableFuture<Void> permit = connections.acquire(timeoutMs);
+            if (!permit.isCompletedExceptionally()) {
+                return permit.thenApply(ignored -> connections);
+            }
+        }
+    }
+
+    /**
+     * Blocking form of {@link #acquire}. Returns null if no permit became free within the timeout.
+     */
+    public BackendConnections acquireBlocking(Backend backend, long timeoutMs) throws InterruptedException {
+        while (true) {
+            BackendConnections connections = connectionsFor(backend);
+            if (connections.acquireBlocking(timeoutMs)) {
+                return connections;
+            }
+            if (!connections.isClosed()) {
+                return null;
+            }
+        }
+    }
+
+    public void prewarm(Backend backend) {
+        if (warmupConnections <= 0) {
+            return;
+        }
+
+        executor.execute(() -> {
+            probeConnectLatency(backend);
+
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(backend.getUrl() + warmupPath))
+                    .timeout(Duration.ofMillis(connectTimeoutMs))
+                    .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                    .build();
+
+            // Warm-ups hold permits like any request, so they count against maxConnectionsPerBackend.
+            List<CompletableFuture<HttpResponse<Void>>> warmups = new ArrayList<>(warmupConnections);
+            for (int i = 0; i < warmupConnections; i++) {
+                warmups.add(acquire(backend, connectTimeoutMs).thenCompose(connections -> connections.getHttpClient()
+                        .sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                        .whenComplete((response, error) -> connections.release())));
+            }
+
+            CompletableFuture.allOf(warmups.toArray(new CompletableFuture<?>[0]))
+                    .orTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS)
+                    .whenComplete((ignored, error) -> {
+                        if (error != null) {
+                            log.warn("Connection pre-warm for {} failed: {}", backend.getId(), error.getMessage());
+                        } else {
+                            log.info("Pre-warmed {} connections to {}", warmupConnections, backend.getId());
+                        }
+                    });
+        });
+    }
+
+    public void evict(String backendId) {
+        BackendConnections connections = pools.remove(backendId);
+        if (connections != null) {
+            connections.close();
+            log.info("Closed connection pool for {}", backendId);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void prewarmConfiguredBackends() {
+        backendPool.getAllBackends().forEach(this::prewarm);
+    }
+
+    @Scheduled(fixedDelayString = "${sentinel.proxy.pool.evictionInterval:30}000")
+    public void evictIdle() {
+        pools.keySet().forEach(id -> pools.computeIfPresent(id, (key, connections) -> {
+            if (!connections.closeIfIdle(idleTimeoutNanos)) {
+                return connections;
+            }
+            log.info("Evicted idle connection pool for {}", id);
+            return null;
+        }));
+
+        // Probe only where traffic says little about the backend: pools unused since the last run,
+        // and backends ramping up after recovery. Busy backends are not sent extra connects.
+        long previousRunNanos = lastEvictionRunNanos;
+        lastEvictionRunNanos = System.nanoTime();
+        backendPool.getAllBackends().forEach(backend -> {
+            BackendConnections connections = pools.get(backend.getId());
+            if (connections != null
+                    && (backend.isRampingUp() || connections.getLastUsedNanos() - previousRunNanos < 0)) {
+                executor.execute(() -> probeConnectLatency(backend));
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pools.values().forEach(BackendConnections::close);
+        pools.clear();
+        httpClient.shutdown();
+        executor.shutdown();
+    }
+
+    private BackendConnections createConnections(String backendId) {
+        log.info("Created connection pool for {}: max {} concurrent requests, {}",
+                backendId, maxConnectionsPerBackend, http2 ? "HTTP/2" : "HTTP/1.1");
+
+        return new BackendConnections(backendId, httpClient, maxConnectionsPerBackend,
+                metricsRegistry.getOrCreate(backendId));
+    }
+
+    private void probeConnectLatency(Backend backend) {
+        URI uri = URI.create(backend.getUrl());
+        int port = uri.getPort() != -1 ? uri.getPort() : ("https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80);
+
+        long start = System.nanoTime();
+        try (SocketChannel channel = SocketChannel.open()) {
+            channel.socket().connect(new InetSocketAddress(uri.getHost(), port), (int) connectTimeoutMs);
+            double latencyMs = (System.nanoTime() - start) / 1_000_000.0;
+            metricsRegistry.getOrCreate(backend.getId()).recordConnectLatency(latencyMs);
+        } catch (IOException e) {
+            log.debug("Connect probe to {} failed: {}", backend.getId(), e.getMessage());
+        }
+    }
+}
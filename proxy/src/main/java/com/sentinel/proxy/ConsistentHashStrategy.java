@@ -0,0 +1,105 @@
+package com.sentinel.proxy;
+
+import com.sentinel.model.Backend;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sends every request with the same key to the same backend, so per-key backend caches stay
+ * warm. The key is a request header when one is configured and present, otherwise the leading
+ * path segments. The ring follows the routing table: when weights or circuit states change it is
+ * updated on the next request, and only keys on the arcs that changed owner move.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "sentinel.proxy.routingStrategy", havingValue = "hash")
+public class ConsistentHashStrategy implements RoutingStrategy {
+
+    private final String keyHeader;
+    private final int pathSegments;
+    private final int pointsPerWeight;
+
+    private volatile HashRing ring = HashRing.EMPTY;
+
+    public ConsistentHashStrategy(
+            @Value("${sentinel.proxy.hashing.header:}") String keyHeader,
+            @Value("${sentinel.proxy.hashing.pathSegments:0}") int pathSegments,
+            @Value("${sentinel.proxy.hashing.pointsPerWeight:2}") int pointsPerWeight) {
+        this.keyHeader = keyHeader;
+        this.pathSegments = pathSegments;
+        this.pointsPerWeight = Math.max(1, pointsPerWeight);
+
+        log.info("ConsistentHashStrategy header={}, pathSegments={}, pointsPerWeight={}",
+                keyHeader.isEmpty() ? "none" : keyHeader, pathSegments, this.pointsPerWeight);
+    }
+
+    @Override
+    public Backend select(RoutingTable table) {
+        return table.select(ThreadLocalRandom.current());
+    }
+
+    @Override
+    public long routingKey(HttpServletRequest request) {
+        if (!keyHeader.isEmpty()) {
+            String value = request.getHeader(keyHeader);
+            if (value != null) {
+                return HashRing.hash(value);
+            }
+        }
+        return HashRing.hash(pathPrefix(request.getRequestURI()));
+    }
+
+    @Override
+    public Backend select(RoutingTable table, long routingKey) {
+        HashRing current = ringFor(table);
+        if (current.isEmpty()) {
+            // Every backend is at effective weight zero; spread keys evenly instead.
+            return table.get((int) Long.remainderUnsigned(routingKey, table.size()));
+        }
+        return current.select(routingKey);
+    }
+
+    @Override
+    public Backend selectAlternative(RoutingTable table, long routingKey, Collection<Backend> excluded) {
+        HashRing current = ringFor(table);
+        return current.isEmpty() ? null : current.selectExcluding(routingKey, excluded);
+    }
+
+    private HashRing ringFor(RoutingTable table) {
+        HashRing current = ring;
+        return current.getTable() == table ? current : refresh(table);
+    }
+
+    private synchronized HashRing refresh(RoutingTable table) {
+        HashRing current = ring;
+        if (current.getTable() != table) {
+            current = HashRing.update(current, table, pointsPerWeight);
+            ring = current;
+            log.debug("Updated hash ring: {} backends, {} points", table.size(), current.size());
+        }
+        return current;
+    }
+
+    /**
+     * The first {@code pathSegments} segments of {@code path}, or all of it when that is zero.
+     */
+    private String pathPrefix(String path) {
+        if (pathSegments <= 0) {
+            return path;
+        }
+
+        int segments = 0;
+        for (int i = 1; i < path.length(); i++) {
+            if (path.charAt(i) == '/' && ++segments == pathSegments) {
+                return path.substring(0, i);
+            }
+        }
+        return path;
+    }
+}
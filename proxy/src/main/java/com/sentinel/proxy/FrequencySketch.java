@@ -0,0 +1,73 @@
+package com.sentinel.proxy;
+
+/**
+ * Approximate access counts for cache admission: a count-min sketch of depth four whose four-bit
+ * counters are packed sixteen to a long. Once the number of increments reaches ten times the table
+ * width every counter is halved, so popularity from long ago fades and new hot keys can compete.
+ * <p>
+ * Not thread-safe; callers serialize access.
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_COUNT = 15;
+
+    private final long[] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int expectedEntries) {
+        int width = Integer.highestOneBit(Math.max(64, expectedEntries - 1) << 1);
+        this.table = new long[width];
+        this.mask = width - 1;
+        this.sampleSize = 10 * width;
+    }
+
+    int frequency(long hash) {
+        int frequency = MAX_COUNT;
+        for (int depth = 0; depth < SEEDS.length; depth++) {
+            frequency = Math.min(frequency, counter(hash, depth));
+        }
+        return frequency;
+    }
+
+    void increment(long hash) {
+        boolean added = false;
+        for (int depth = 0; depth < SEEDS.length; depth++) {
+            int index = indexOf(hash, depth);
+            int shift = offset(hash, depth) << 2;
+            if (((table[index] >>> shift) & 0xf) < MAX_COUNT) {
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions >>>= 1;
+    }
+
+    private int counter(long hash, int depth) {
+        return (int) ((table[indexOf(hash, depth)] >>> (offset(hash, depth) << 2)) & 0xf);
+    }
+
+    private int indexOf(long hash, int depth) {
+        long h = (hash ^ SEEDS[depth]) * SEEDS[(depth + 1) & 3];
+        return (int) (h >>> 40) & mask;
+    }
+
+    private int offset(long hash, int depth) {
+        return (int) (hash >>> (depth << 4)) & 0xf;
+    }
+}
@@ -0,0 +1,96 @@
+package com.sentinel.proxy;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class GradientLimit {
+
+    private static final double RTT_TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double SHORT_RTT_ALPHA = 0.5;
+    private static final double LONG_RTT_ALPHA = 2.0 / 601;
+    private static final double DROP_BACKOFF = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inflight = new AtomicInteger(0);
+    private final AtomicLong rejected = new AtomicLong(0);
+
+    private volatile double limit;
+    private double shortRtt;
+    private double longRtt;
+
+    public GradientLimit(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+    }
+
+    public boolean tryAcquire() {
+        int current;
+        do {
+            current = inflight.get();
+            if (current >= (int) limit) {
+                rejected.incrementAndGet();
+                return false;
+            }
+        } while (!inflight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    public void release(long rttNanos, boolean dropped) {
+        int inflightAtCompletion = inflight.getAndDecrement();
+        onSample(Math.max(rttNanos / 1000.0, 1.0), inflightAtCompletion, dropped);
+    }
+
+    public void cancel() {
+        inflight.decrementAndGet();
+    }
+
+    private synchronized void onSample(double rtt, int inflightAtCompletion, boolean dropped) {
+        if (longRtt == 0) {
+            shortRtt = rtt;
+            longRtt = rtt;
+            return;
+        }
+
+        shortRtt = shortRtt + SHORT_RTT_ALPHA * (rtt - shortRtt);
+        longRtt = longRtt + LONG_RTT_ALPHA * (rtt - longRtt);
+
+        if (longRtt / shortRtt > 2.0) {
+            longRtt = longRtt * 0.95;
+        }
+
+        double currentLimit = limit;
+        double newLimit;
+
+        if (dropped) {
+            newLimit = currentLimit * DROP_BACKOFF;
+        } else if (inflightAtCompletion < currentLimit / 2) {
+            return;
+        } else {
+            double gradient = Math.max(0.5, Math.min(1.0, RTT_TOLERANCE * longRtt / shortRtt));
+            double queueSize = Math.sqrt(currentLimit);
+            newLimit = currentLimit * gradient + queueSize;
+            newLimit = currentLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        }
+
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public double getUtilizationPercent() {
+        return (inflight.get() * 100.0) / Math.max(getLimit(), 1);
+    }
+}
@@ -0,0 +1,160 @@
+package com.sentinel.proxy;
+
+import com.sentinel.model.Backend;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable consistent-hash ring over the backends of one {@link RoutingTable}. A backend owns
+ * {@code effectiveWeight * pointsPerWeight} points whose positions depend only on its id and the
+ * point's ordinal, so a backend whose weight drops by 10% gives up its highest-ordinal 10% of
+ * points and only the keys on those arcs move. {@link #update} derives the next ring from the
+ * previous one, hashing and merging in only the points that were added.
+ */
+final class HashRing {
+
+    static final HashRing EMPTY = new HashRing(RoutingTable.EMPTY, new long[0], new Backend[0], new int[0],
+            new IdentityHashMap<>());
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private final RoutingTable table;
+    private final long[] points;
+    private final Backend[] owners;
+    private final int[] ordinals;
+    private final Map<Backend, Integer> pointCounts;
+
+    private HashRing(RoutingTable table, long[] points, Backend[] owners, int[] ordinals,
+                     Map<Backend, Integer> pointCounts) {
+        this.table = table;
+        this.points = points;
+        this.owners = owners;
+        this.ordinals = ordinals;
+        this.pointCounts = pointCounts;
+    }
+
+    /**
+     * The ring for {@code table}. Points of backends that left the table or lost weight are
+     * dropped from {@code previous}; points of backends that joined or gained weight are sorted
+     * and merged in.
+     */
+    static HashRing update(HashRing previous, RoutingTable table, int pointsPerWeight) {
+        Map<Backend, Integer> counts = new IdentityHashMap<>(table.size() * 2);
+        for (int i = 0; i < table.size(); i++) {
+            counts.put(table.get(i), table.getWeight(i) * pointsPerWeight);
+        }
+
+        List<Point> added = new ArrayList<>();
+        counts.forEach((backend, count) -> {
+            long idHash = hash(backend.getId());
+            for (int ordinal = previous.pointCounts.getOrDefault(backend, 0); ordinal < count; ordinal++) {
+                added.add(new Point(point(idHash, ordinal), backend, ordinal));
+            }
+        });
+        added.sort(Comparator.comparingLong(Point::position));
+
+        int capacity = previous.points.length + added.size();
+        long[] points = new long[capacity];
+        Backend[] owners = new Backend[capacity];
+        int[] ordinals = new int[capacity];
+        int size = 0;
+        int next = 0;
+
+        for (int i = 0; i < previous.points.length; i++) {
+            Integer count = counts.get(previous.owners[i]);
+            if (count == null || previous.ordinals[i] >= count) {
+                continue;
+            }
+
+            for (; next < added.size() && added.get(next).position() < previous.points[i]; next++, size++) {
+                Point point = added.get(next);
+                points[size] = point.position();
+                owners[size] = point.owner();
+                ordinals[size] = point.ordinal();
+            }
+            points[size] = previous.points[i];
+            owners[size] = previous.owners[i];
+            ordinals[size] = previous.ordinals[i];
+            size++;
+        }
+        for (; next < added.size(); next++, size++) {
+            Point point = added.get(next);
+            points[size] = point.position();
+            owners[size] = point.owner();
+            ordinals[size] = point.ordinal();
+        }
+
+        return new HashRing(table, Arrays.copyOf(points, size), Arrays.copyOf(owners, size),
+                Arrays.copyOf(ordinals, size), counts);
+    }
+
+    /**
+     * 64-bit FNV-1a followed by a SplitMix64 finalizer, so similar keys land far apart.
+     */
+    static long hash(CharSequence value) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    Backend select(long key) {
+        return owners[ceiling(key)];
+    }
+
+    /**
+     * The first backend clockwise from {@code key} that is not in {@code excluded}, or null.
+     */
+    Backend selectExcluding(long key, Collection<Backend> excluded) {
+        int start = ceiling(key);
+        for (int n = 0; n < points.length; n++) {
+            Backend owner = owners[(start + n) % points.length];
+            if (!excluded.contains(owner)) {
+                return owner;
+            }
+        }
+        return null;
+    }
+
+    RoutingTable getTable() {
+        return table;
+    }
+
+    int size() {
+        return points.length;
+    }
+
+    boolean isEmpty() {
+        return points.length == 0;
+    }
+
+    private int ceiling(long key) {
+        int index = Arrays.binarySearch(points, key);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return index == points.length ? 0 : index;
+    }
+
+    private static long point(long idHash, int ordinal) {
+        return mix(idHash + (ordinal + 1) * GOLDEN_GAMMA);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private record Point(long position, Backend owner, int ordinal) {
+    }
+}
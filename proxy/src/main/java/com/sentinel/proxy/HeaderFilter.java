@@ -0,0 +1,145 @@
+package com.sentinel.proxy;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+
+public final class HeaderFilter {
+
+    private static final String[] HOP_BY_HOP = {
+        "connection", "keep-alive", "proxy-authenticate", "proxy-authorization",
+        "proxy-connection", "te", "trailer", "transfer-encoding", "upgrade"
+    };
+
+    private static final String[] CLIENT_MANAGED = {
+        "host", "content-length", "expect", "x-forwarded-for", "x-forwarded-proto", "x-forwarded-host"
+    };
+
+    private static final String[][] HOP_BY_HOP_BY_LENGTH = indexByLength(HOP_BY_HOP);
+    private static final String[][] REQUEST_SKIPPED_BY_LENGTH = indexByLength(concat(HOP_BY_HOP, CLIENT_MANAGED));
+
+    private static final String[] NO_HEADERS = new String[0];
+
+    private HeaderFilter() {
+    }
+
+    public static boolean isHopByHop(String name) {
+        return matches(HOP_BY_HOP_BY_LENGTH, name);
+    }
+
+    public static boolean isSkippedRequestHeader(String name) {
+        return matches(REQUEST_SKIPPED_BY_LENGTH, name);
+    }
+
+    public static String[] requestHeaders(HttpServletRequest request) {
+        Enumeration<String> names = request.getHeaderNames();
+        if (names == null) {
+            return NO_HEADERS;
+        }
+
+        String connection = request.getHeader("Connection");
+        List<String> headers = new ArrayList<>(32);
+
+        while (names.hasMoreElements()) {
+            String name = names.nextElement();
+            if (isSkippedRequestHeader(name) || isListedInConnection(connection, name)) {
+                continue;
+            }
+
+            Enumeration<String> values = request.getHeaders(name);
+            while (values.hasMoreElements()) {
+                headers.add(name);
+                headers.add(values.nextElement());
+            }
+        }
+
+        addForwardedHeaders(request, headers);
+        return headers.toArray(NO_HEADERS);
+    }
+
+    private static void addForwardedHeaders(HttpServletRequest request, List<String> headers) {
+        String forwardedFor = request.getHeader("X-Forwarded-For");
+        String remoteAddr = request.getRemoteAddr();
+        headers.add("X-Forwarded-For");
+        headers.add(forwardedFor == null ? remoteAddr : forwardedFor + ", " + remoteAddr);
+
+        String forwardedProto = request.getHeader("X-Forwarded-Proto");
+        headers.add("X-Forwarded-Proto");
+        headers.add(forwardedProto == null ? request.getScheme() : forwardedProto);
+
+        String forwardedHost = request.getHeader("X-Forwarded-Host");
+        String host = forwardedHost != null ? forwardedHost : request.getHeader("Host");
+        if (host != null) {
+            headers.add("X-Forwarded-Host");
+            headers.add(host);
+        }
+    }
+
+    private static boolean isListedInConnection(String connection, String name) {
+        if (connection == null || connection.length() < name.length()) {
+            return false;
+        }
+
+        int length = name.length();
+        int index = 0;
+        while (index < connection.length()) {
+            while (index < connection.length()
+                    && (connection.charAt(index) == ' ' || connection.charAt(index) == ',')) {
+                index++;
+            }
+            int end = index;
+            while (end < connection.length() && connection.charAt(end) != ',' && connection.charAt(end) != ' ') {
+                end++;
+            }
+            if (end - index == length && connection.regionMatches(true, index, name, 0, length)) {
+                return true;
+            }
+            index = end;
+        }
+        return false;
+    }
+
+    private static boolean matches(String[][] table, String name) {
+        int length = name.length();
+        if (length >= table.length) {
+            return false;
+        }
+
+        String[] candidates = table[length];
+        if (candidates == null) {
+            return false;
+        }
+
+        for (String candidate : candidates) {
+            if (name.regionMatches(true, 0, candidate, 0, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String[][] indexByLength(String[] names) {
+        int maxLength = 0;
+        for (String name : names) {
+            maxLength = Math.max(maxLength, name.length());
+        }
+
+        String[][] table = new String[maxLength + 1][];
+        for (String name : names) {
+            String[] existing = table[name.length()];
+            String[] updated = existing == null ? new String[1] : Arrays.copyOf(existing, existing.length + 1);
+            updated[updated.length - 1] = name;
+            table[name.length()] = updated;
+        }
+        return table;
+    }
+
+    private static String[] concat(String[] first, String[] second) {
+        String[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
@@ -1,108 +1,172 @@
 package com.sentinel.proxy;
 
+import com.sentinel.metrics.MetricsCollector;
 import com.sentinel.model.Backend;
-import com.sentinel.model.RequestOutcome;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.net.ConnectException;
 import java.net.URI;
-import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
 import java.time.Duration;
-import java.time.Instant;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Slf4j
 @Component
 public class HttpProxyClient {
 
-    private final HttpClient httpClient;
+    private final ConnectionPoolManager connectionPools;
     private final long requestTimeoutMs;
 
     public HttpProxyClient(
             @Value("${sentinel.proxy.requestTimeout:5000}") long requestTimeoutMs,
-            @Value("${sentinel.proxy.maxConnections:2000}") int maxConnections) {
+            ConnectionPoolManager connectionPools) {
         this.requestTimeoutMs = requestTimeoutMs;
-        this.httpClient = HttpClient.newBuilder()
-                .connectTimeout(Duration.ofMillis(requestTimeoutMs))
-                .version(HttpClient.Version.HTTP_1_1)
-                .executor(Executors.newFixedThreadPool(maxConnections))
-                .build();
-
-        log.info("HttpProxyClient initialized with {} max connections, {}ms timeout",
-                maxConnections, requestTimeoutMs);
+        this.connectionPools = connectionPools;
+
+        log.info("HttpProxyClient initialized with {}ms timeout", requestTimeoutMs);
     }
 
-    public ProxyResult forwardRequest(Backend backend, String path, String method, String body) {
-        Instant start = Instant.now();
+    public ProxyResult forwardRequest(Backend backend, ProxyRequest proxyRequest, ResponseSink sink) {
+        RequestTimer timer = new RequestTimer();
+        BackendConnections connections;
 
         try {
-            String url = backend.getUrl() + path;
-
-            HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .timeout(Duration.ofMillis(requestTimeoutMs));
-
-            switch (method.toUpperCase()) {
-                case "GET" -> requestBuilder.GET();
-                case "POST" -> requestBuilder.POST(HttpRequest.BodyPublishers.ofString(body != null ? body : ""));
-                case "PUT" -> requestBuilder.PUT(HttpRequest.BodyPublishers.ofString(body != null ? body : ""));
-                case "DELETE" -> requestBuilder.DELETE();
-                default -> requestBuilder.GET();
+            connections = connectionPools.acquireBlocking(backend, requestTimeoutMs);
+            if (connections == null) {
+                return failureResult(backend, timer, new TimeoutException("Connection pool exhausted"));
             }
+        } catch (InterruptedException e) {
+            return failureResult(backend, timer, e);
+        }
 
-            HttpRequest request = requestBuilder.build();
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        try {
+            HttpRequest request = buildRequest(backend, proxyRequest);
+            timer.markAcquired();
+            HttpResponse<Long> response = connections.getHttpClient()
+                    .send(request, StreamingBodySubscriber.handler(sink, timer));
+            return successResult(timer, response);
+        } catch (IOException | InterruptedException e) {
+            return failureResult(backend, timer, e);
+        } finally {
+            connections.release();
+        }
+    }
 
-            long latencyMs = Duration.between(start, Instant.now()).toMillis();
+    public CompletableFuture<ProxyResult> forwardRequestAsync(Backend backend, ProxyRequest proxyRequest,
+                                                              ResponseSink sink) {
+        RequestTimer timer = new RequestTimer();
+
+        HttpRequest request = buildRequest(backend, proxyRequest);
+        // The request timeout bounds the wait for response headers, as it does for send(). There is
+        // no deadline over the whole exchange: the future must not complete while the body is
+        // still streaming into the sink, or the caller would finish the client response under it.
+        return connectionPools.acquire(backend, requestTimeoutMs)
+                .thenCompose(connections -> {
+                    timer.markAcquired();
+                    return connections.getHttpClient()
+                            .sendAsync(request, StreamingBodySubscriber.handler(sink, timer))
+                            .whenComplete((response, error) -> connections.release());
+                })
+                .handle((response, error) -> error == null
+                        ? successResult(timer, response)
+                        : failureResult(backend, timer, unwrap(error)));
+    }
 
-            RequestOutcome outcome = RequestOutcome.builder()
-                    .backendId(backend.getId())
-                    .timestamp(start)
-                    .latencyMs(latencyMs)
-                    .statusCode(response.statusCode())
-                    .timeout(false)
-                    .error(false)
-                    .build();
+    private HttpRequest buildRequest(Backend backend, ProxyRequest proxyRequest) {
+        String url = backend.getUrl() + proxyRequest.pathWithQuery();
 
-            return new ProxyResult(response.statusCode(), response.body(), outcome);
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .timeout(Duration.ofMillis(requestTimeoutMs));
 
-        } catch (java.net.http.HttpTimeoutException e) {
-            long latencyMs = Duration.between(start, Instant.now()).toMillis();
-            log.warn("Request to {} timed out after {}ms", backend.getId(), latencyMs);
+        String method = proxyRequest.method();
+        if (!proxyRequest.hasBody() && "GET".equals(method)) {
+            requestBuilder.GET();
+        } else if (!proxyRequest.hasBody() && "HEAD".equals(method)) {
+            requestBuilder.HEAD();
+        } else {
+            requestBuilder.method(method, bodyPublisher(proxyRequest));
+        }
 
-            RequestOutcome outcome = RequestOutcome.builder()
-                    .backendId(backend.getId())
-                    .timestamp(start)
-                    .latencyMs(latencyMs)
-                    .statusCode(504)
-                    .timeout(true)
-                    .error(true)
-                    .errorType("TIMEOUT")
-                    .build();
+        if (proxyRequest.headers().length > 0) {
+            requestBuilder.headers(proxyRequest.headers());
+        }
 
-            return new ProxyResult(504, "Gateway Timeout", outcome);
+        return requestBuilder.build();
+    }
 
-        } catch (IOException | InterruptedException e) {
-            long latencyMs = Duration.between(start, Instant.now()).toMillis();
-            log.error("Request to {} failed: {}", backend.getId(), e.getMessage());
-
-            RequestOutcome outcome = RequestOutcome.builder()
-                    .backendId(backend.getId())
-                    .timestamp(start)
-                    .latencyMs(latencyMs)
-                    .statusCode(502)
-                    .timeout(false)
-                    .error(true)
-                    .errorType("IO_ERROR")
-                    .build();
-
-            return new ProxyResult(502, "Bad Gateway", outcome);
+    private HttpRequest.BodyPublisher bodyPublisher(ProxyRequest proxyRequest) {
+        if (!proxyRequest.hasBody()) {
+            return HttpRequest.BodyPublishers.noBody();
+        }
+
+        HttpRequest.BodyPublisher stream = HttpRequest.BodyPublishers.ofInputStream(proxyRequest::body);
+        if (proxyRequest.contentLength() > 0) {
+            return HttpRequest.BodyPublishers.fromPublisher(stream, proxyRequest.contentLength());
+        }
+        return stream;
+    }
+
+    private ProxyResult successResult(RequestTimer timer, HttpResponse<Long> response) {
+        return new ProxyResult(response.statusCode(), null, timer.poolWaitNanos(), timer.firstByteNanos(),
+                timer.elapsedNanos(), (byte) 0);
+    }
+
+    private ProxyResult failureResult(Backend backend, RequestTimer timer, Throwable error) {
+        long latencyNanos = timer.elapsedNanos();
+
+        if (error instanceof HttpTimeoutException || error instanceof TimeoutException) {
+            log.warn("Request to {} timed out after {}ms", backend.getId(),
+                    TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+            byte flags = MetricsCollector.FLAG_TIMEOUT | MetricsCollector.FLAG_ERROR;
+            if (error instanceof HttpConnectTimeoutException) {
+                flags |= MetricsCollector.FLAG_CONNECT_FAILURE;
+            }
+            return new ProxyResult(504, "Gateway Timeout", timer.poolWaitNanos(), timer.firstByteNanos(),
+                    latencyNanos, flags);
+        }
+
+        if (error instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
         }
+
+        log.error("Request to {} failed: {}", backend.getId(), error.getMessage());
+        byte flags = MetricsCollector.FLAG_ERROR;
+        if (error instanceof ConnectException) {
+            flags |= MetricsCollector.FLAG_CONNECT_FAILURE;
+        }
+        return new ProxyResult(502, "Bad Gateway", timer.poolWaitNanos(), timer.firstByteNanos(),
+                latencyNanos, flags);
+    }
+
+    private Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException)
+                && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
     }
 
-    public record ProxyResult(int statusCode, String body, RequestOutcome outcome) {}
+    /**
+     * Outcome of one forwarded request. {@code body} is only set for errors generated by the proxy;
+     * phase durations are in nanoseconds, -1 for phases that were never reached, and {@code flags}
+     * uses the {@link MetricsCollector} outcome flags.
+     */
+    public record ProxyResult(int statusCode, String body, long poolWaitNanos, long firstByteNanos,
+                              long latencyNanos, byte flags) {
+
+        public boolean isTimeout() {
+            return (flags & MetricsCollector.FLAG_TIMEOUT) != 0;
+        }
+    }
 }
@@ -0,0 +1,55 @@
+package com.sentinel.proxy;
+
+import com.sentinel.metrics.BackendMetrics;
+import com.sentinel.metrics.MetricsRegistry;
+import com.sentinel.model.Backend;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "sentinel.proxy.routingStrategy", havingValue = "p2c")
+public class PowerOfTwoChoicesStrategy implements RoutingStrategy {
+
+    private static final int MAX_SAMPLE_ATTEMPTS = 3;
+    private static final double MIN_LATENCY_MS = 0.01;
+
+    private final MetricsRegistry metricsRegistry;
+
+    @Override
+    public Backend select(RoutingTable table) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Backend first = table.select(random);
+        Backend second = first;
+
+        for (int i = 0; i < MAX_SAMPLE_ATTEMPTS && second == first; i++) {
+            second = table.select(random);
+        }
+
+        if (second == first) {
+            return first;
+        }
+
+        double firstCost = cost(first);
+        double secondCost = cost(second);
+
+        if (firstCost == secondCost) {
+            return random.nextBoolean() ? first : second;
+        }
+
+        return firstCost < secondCost ? first : second;
+    }
+
+    private double cost(Backend backend) {
+        BackendMetrics metrics = metricsRegistry.get(backend.getIndex());
+        if (metrics == null) {
+            return 0.0;
+        }
+
+        double latency = Math.max(metrics.getLatencyTrend(), MIN_LATENCY_MS);
+        return latency * (metrics.getInflightCount() + 1);
+    }
+}
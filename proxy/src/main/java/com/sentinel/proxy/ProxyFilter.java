@@ -1,5 +1,7 @@
 package com.sentinel.proxy;
 
+import com.sentinel.config.BackendConfig.ProxyProperties;
+import com.sentinel.metrics.BackendMetrics;
 import com.sentinel.metrics.MetricsCollector;
 import com.sentinel.model.Backend;
 import jakarta.servlet.*;
@@ -12,7 +14,14 @@ import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Slf4j
 @Component
@@ -20,9 +29,18 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public class ProxyFilter implements Filter {
 
+    private static final String[] NO_HEADERS = new String[0];
+
     private final RequestRouter router;
     private final HttpProxyClient proxyClient;
     private final MetricsCollector metricsCollector;
+    private final BufferPool bufferPool;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final CircuitGate circuitGate;
+    private final RetryPolicy retryPolicy;
+    private final ResponseCache responseCache;
+    private final RequestCoalescer requestCoalescer;
+    private final ProxyProperties proxyProperties;
 
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
@@ -35,6 +53,7 @@ public class ProxyFilter implements Filter {
         }
 
         String requestPath = httpRequest.getRequestURI();
+        String query = httpRequest.getQueryString();
         String method = httpRequest.getMethod();
 
         String upgrade = httpRequest.getHeader("Upgrade");
@@ -51,33 +70,516 @@ public class ProxyFilter implements Filter {
             return;
         }
 
-        Optional<Backend> backend = router.selectBackend();
+        String[] headers = proxyProperties.isForwardHeaders()
+                ? HeaderFilter.requestHeaders(httpRequest)
+                : NO_HEADERS;
+
+        ProxyRequest proxyRequest = new ProxyRequest(method, requestPath, query, headers,
+                httpRequest.getInputStream(), requestContentLength(httpRequest));
+        ResponseSink sink = new ServletResponseSink(httpResponse, bufferPool, proxyProperties.isForwardHeaders());
+
+        long routingKey = router.routingKey(httpRequest);
+        ResponseCache.Lookup lookup = responseCache.lookup(proxyRequest);
+        if (lookup.status() == ResponseCache.Status.HIT) {
+            responseCache.serve(lookup, sink);
+            return;
+        }
+        if (lookup.status() == ResponseCache.Status.STALE) {
+            responseCache.serve(lookup, sink);
+            responseCache.revalidateInBackground(lookup, () -> revalidate(lookup, routingKey));
+            return;
+        }
+
+        ProxyRequest upstreamRequest = lookup.request();
+        RequestCoalescer.Membership membership = requestCoalescer.join(proxyRequest, upstreamRequest);
+        if (membership == null) {
+            forward(httpRequest, httpResponse, routingKey, upstreamRequest, responseCache.sink(lookup, sink));
+            return;
+        }
+
+        if (!membership.leader()) {
+            ResponseSink replaySink = responseCache.replaySink(lookup, sink);
+            ResponseSink forwardSink = responseCache.sink(lookup, sink);
+            if (proxyProperties.isAsync() && httpRequest.isAsyncSupported()) {
+                followAsync(httpRequest, httpResponse, membership.flight(), routingKey, upstreamRequest,
+                        replaySink, forwardSink);
+            } else if (!requestCoalescer.follow(membership.flight(), replaySink)) {
+                forward(httpRequest, httpResponse, routingKey, upstreamRequest, forwardSink);
+            }
+            return;
+        }
+
+        ResponseSink leaderSink = requestCoalescer.leaderSink(membership.flight(), responseCache.sink(lookup, sink));
+        try {
+            forward(httpRequest, httpResponse, routingKey, upstreamRequest, leaderSink);
+        } finally {
+            // Async exchanges release their followers on completion.
+            if (!httpRequest.isAsyncStarted()) {
+                requestCoalescer.abandon(leaderSink);
+            }
+        }
+    }
+
+    /**
+     * Parks a coalesced follower on its AsyncContext instead of a servlet thread. Once the leader
+     * is done, or the wait times out, it replays the shared response or forwards the request itself.
+     */
+    private void followAsync(HttpServletRequest httpRequest, HttpServletResponse httpResponse,
+                             RequestCoalescer.Flight flight, long routingKey, ProxyRequest proxyRequest,
+                             ResponseSink replaySink, ResponseSink forwardSink) {
+        AsyncContext asyncContext = httpRequest.startAsync();
+        // Sized for the wait plus a full forward, which reuses this context if it falls back.
+        asyncContext.setTimeout(proxyProperties.getRequestTimeout() * (3 + retryPolicy.getMaxRetries()));
+
+        // The flight completes on the leader's client thread, or on the JDK's shared delay thread
+        // when the wait times out; the replay or fallback runs on a container thread instead.
+        requestCoalescer.await(flight).whenComplete((shared, error) -> asyncContext.start(() -> {
+            boolean handedOff = false;
+            try {
+                if (!requestCoalescer.replay(shared, replaySink)) {
+                    handedOff = forward(httpRequest, httpResponse, routingKey, proxyRequest, forwardSink);
+                }
+            } catch (IOException e) {
+                log.warn("Failed to write response for {} {}: {}",
+                        proxyRequest.method(), proxyRequest.path(), e.getMessage());
+            } finally {
+                if (!handedOff) {
+                    completeQuietly(asyncContext);
+                }
+            }
+        }));
+    }
+
+    /**
+     * Routes and sends the request. Returns true if an async exchange took over the response and
+     * will complete the AsyncContext itself.
+     */
+    private boolean forward(HttpServletRequest httpRequest, HttpServletResponse httpResponse, long routingKey,
+                            ProxyRequest proxyRequest, ResponseSink sink) throws IOException {
+        String method = proxyRequest.method();
+        String requestPath = proxyRequest.path();
+        Optional<Backend> backend = router.selectBackend(routingKey);
 
         if (backend.isEmpty()) {
             log.error("No backend available for request: {} {}", method, requestPath);
+            if (answerProxyError(sink)) {
+                return false;
+            }
             httpResponse.setStatus(503);
             httpResponse.setContentType("text/plain");
             httpResponse.getWriter().write("Service Unavailable - No backends available");
-            return;
+            return false;
         }
 
-        Backend selected = backend.get();
+        Admitted admitted = acquireBackend(backend.get(), routingKey);
+
+        if (admitted == null) {
+            log.warn("Concurrency limit reached or circuit open, rejecting request: {} {}", method, requestPath);
+            if (answerProxyError(sink)) {
+                return false;
+            }
+            httpResponse.setStatus(503);
+            httpResponse.setContentType("text/plain");
+            httpResponse.getWriter().write("Service Unavailable - Backend concurrency limit reached");
+            return false;
+        }
+
+        Backend selected = admitted.backend();
         log.debug("Routing {} {} to backend {}", method, requestPath, selected.getId());
 
-        String body = null;
-        if (httpRequest.getContentLength() > 0) {
-            body = new String(httpRequest.getInputStream().readAllBytes());
+        retryPolicy.onRequest();
+        if (retryPolicy.isEligible(proxyRequest)) {
+            return forwardWithRetries(httpRequest, httpResponse, admitted, routingKey, proxyRequest, sink);
+        }
+
+        if (proxyProperties.isAsync() && httpRequest.isAsyncSupported()) {
+            forwardAsync(httpRequest, httpResponse, admitted, proxyRequest, sink);
+            return true;
+        }
+
+        writeError(httpResponse, sink, attempt(admitted, proxyRequest, sink));
+        return false;
+    }
+
+    private void forwardAsync(HttpServletRequest httpRequest, HttpServletResponse httpResponse,
+                              Admitted admitted, ProxyRequest proxyRequest, ResponseSink sink) {
+        AsyncContext asyncContext = startAsync(httpRequest, proxyProperties.getRequestTimeout() * 2);
+
+        Backend selected = admitted.backend();
+        attemptAsync(admitted, proxyRequest, sink).whenComplete((result, error) -> {
+            try {
+                if (error != null) {
+                    log.error("Async request to {} failed: {}", selected.getId(), error.getMessage());
+                    failWithBadGateway(httpResponse, sink);
+                    return;
+                }
+                writeError(httpResponse, sink, result);
+            } catch (IOException e) {
+                log.warn("Failed to write response for {} {}: {}",
+                        proxyRequest.method(), proxyRequest.path(), e.getMessage());
+            } finally {
+                requestCoalescer.abandon(sink);
+                completeQuietly(asyncContext);
+            }
+        });
+    }
+
+    /**
+     * Forwards a request that {@link RetryPolicy} allows to be sent more than once. In sync mode
+     * attempts block the servlet thread one after another, unless hedging needs them to overlap,
+     * in which case they run on the async client and the servlet thread waits for the outcome.
+     */
+    private boolean forwardWithRetries(HttpServletRequest httpRequest, HttpServletResponse httpResponse,
+                                       Admitted admitted, long routingKey, ProxyRequest proxyRequest,
+                                       ResponseSink sink)
+            throws IOException {
+        if (!proxyProperties.isAsync() || !httpRequest.isAsyncSupported()) {
+            boolean blocking = !retryPolicy.isHedging();
+            HttpProxyClient.ProxyResult result;
+            try {
+                result = new RetryingExchange(routingKey, proxyRequest, sink, blocking).start(admitted).join();
+            } catch (CompletionException e) {
+                log.error("Request to {} failed: {}", admitted.backend().getId(), e.getCause().getMessage());
+                failWithBadGateway(httpResponse, sink);
+                return false;
+            }
+            writeError(httpResponse, sink, result);
+            return false;
         }
 
-        HttpProxyClient.ProxyResult result = proxyClient.forwardRequest(
-                selected, requestPath, method, body);
+        AsyncContext asyncContext = startAsync(httpRequest,
+                proxyProperties.getRequestTimeout() * (2 + retryPolicy.getMaxRetries()));
 
-        metricsCollector.record(result.outcome());
+        new RetryingExchange(routingKey, proxyRequest, sink, false).start(admitted).whenComplete((result, error) -> {
+            try {
+                if (error != null) {
+                    log.error("Async request to {} failed: {}", admitted.backend().getId(), error.getMessage());
+                    failWithBadGateway(httpResponse, sink);
+                    return;
+                }
+                writeError(httpResponse, sink, result);
+            } catch (IOException e) {
+                log.warn("Failed to write response for {} {}: {}",
+                        proxyRequest.method(), proxyRequest.path(), e.getMessage());
+            } finally {
+                requestCoalescer.abandon(sink);
+                completeQuietly(asyncContext);
+            }
+        });
+        return true;
+    }
 
+    /**
+     * Starts async processing, or reuses the context of a parked follower that fell back to
+     * forwarding; that context was already sized for the forward.
+     */
+    private AsyncContext startAsync(HttpServletRequest httpRequest, long timeoutMs) {
+        if (httpRequest.isAsyncStarted()) {
+            return httpRequest.getAsyncContext();
+        }
+        AsyncContext asyncContext = httpRequest.startAsync();
+        asyncContext.setTimeout(timeoutMs);
+        return asyncContext;
+    }
+
+    private HttpProxyClient.ProxyResult attempt(Admitted admitted, ProxyRequest proxyRequest, ResponseSink sink) {
+        Backend selected = admitted.backend();
+        HttpProxyClient.ProxyResult result = null;
+        BackendMetrics metrics = startRequest(selected);
+        try {
+            result = proxyClient.forwardRequest(selected, proxyRequest, sink);
+            recordResult(metrics, result);
+        } finally {
+            finishRequest(admitted, metrics, result);
+        }
+        return result;
+    }
+
+    /**
+     * Sends one attempt on the async client and settles its metrics, concurrency slot and circuit
+     * permit when it completes.
+     */
+    private CompletableFuture<HttpProxyClient.ProxyResult> attemptAsync(Admitted admitted, ProxyRequest proxyRequest,
+                                                                        ResponseSink sink) {
+        Backend selected = admitted.backend();
+        CompletableFuture<HttpProxyClient.ProxyResult> future;
+        BackendMetrics metrics = startRequest(selected);
+        try {
+            future = proxyClient.forwardRequestAsync(selected, proxyRequest, sink);
+        } catch (RuntimeException e) {
+            log.error("Failed to dispatch async request to {}: {}", selected.getId(), e.getMessage());
+            finishRequest(admitted, metrics, null);
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return future.whenComplete((result, error) -> {
+            if (result != null) {
+                recordResult(metrics, result);
+            }
+            finishRequest(admitted, metrics, result);
+        });
+    }
+
+    /**
+     * Takes a circuit permit and then a concurrency slot, trying one alternative backend if the
+     * selected one refuses either. Returns null if neither backend admits the request.
+     */
+    private Admitted acquireBackend(Backend selected, long routingKey) {
+        Admitted admitted = admit(selected);
+        if (admitted != null) {
+            return admitted;
+        }
+
+        Optional<Backend> alternative = router.selectAlternative(routingKey, List.of(selected));
+        if (alternative.isPresent()) {
+            admitted = admit(alternative.get());
+            if (admitted != null) {
+                log.debug("Redirected request from {} to {}: backend not admitting requests",
+                        selected.getId(), alternative.get().getId());
+            }
+        }
+        return admitted;
+    }
+
+    private Admitted admit(Backend backend) {
+        CircuitGate.Admission admission = circuitGate.tryAcquire(backend);
+        if (admission == CircuitGate.Admission.REJECTED) {
+            return null;
+        }
+        if (!concurrencyLimiter.tryAcquire(backend.getId())) {
+            circuitGate.cancel(backend, admission);
+            return null;
+        }
+        return new Admitted(backend, admission);
+    }
+
+    private Admitted acquireAlternative(long routingKey, List<Backend> excluded) {
+        Optional<Backend> alternative = router.selectAlternative(routingKey, excluded);
+        return alternative.isPresent() ? admit(alternative.get()) : null;
+    }
+
+    /**
+     * Returns the concurrency slot and circuit permit of a request that was never sent.
+     */
+    private void cancelAdmission(Admitted admitted) {
+        concurrencyLimiter.cancel(admitted.backend().getId());
+        circuitGate.cancel(admitted.backend(), admitted.admission());
+    }
+
+    private long requestContentLength(HttpServletRequest httpRequest) {
+        long contentLength = httpRequest.getContentLengthLong();
+        if (contentLength == -1 && httpRequest.getHeader("Transfer-Encoding") == null) {
+            return 0;
+        }
+        return contentLength;
+    }
+
+    /**
+     * Marks a request to {@code backend} as in flight. The returned metrics belong to this
+     * backend for the whole exchange, even if it is removed and its index reused meanwhile.
+     */
+    private BackendMetrics startRequest(Backend backend) {
+        backend.requestStarted();
+        return metricsCollector.requestStarted(backend.getIndex(), backend.getId());
+    }
+
+    private void recordResult(BackendMetrics metrics, HttpProxyClient.ProxyResult result) {
+        metricsCollector.record(metrics, result.poolWaitNanos(), result.firstByteNanos(), result.latencyNanos(),
+                result.statusCode(), result.flags());
+    }
+
+    private void finishRequest(Admitted admitted, BackendMetrics metrics, HttpProxyClient.ProxyResult result) {
+        Backend selected = admitted.backend();
+        metricsCollector.requestFinished(metrics);
+        selected.requestFinished();
+        if (result == null) {
+            cancelAdmission(admitted);
+        } else {
+            concurrencyLimiter.release(selected.getId(), result.latencyNanos(), result.isTimeout());
+            circuitGate.onComplete(selected, admitted.admission(), result);
+        }
+    }
+
+    /**
+     * Refreshes the entry behind a STALE cache lookup, off the request path.
+     */
+    private void revalidate(ResponseCache.Lookup lookup, long routingKey) {
+        Optional<Backend> backend = router.selectBackend(routingKey);
+        Admitted admitted = backend.isPresent() ? acquireBackend(backend.get(), routingKey) : null;
+        if (admitted == null) {
+            log.debug("No backend admitted background revalidation of {}", lookup.key());
+            return;
+        }
+        attempt(admitted, lookup.request(), responseCache.sink(lookup, ResponseSink.NONE));
+    }
+
+    /**
+     * Called before the proxy answers with an error of its own. Releases any coalesced followers
+     * to send their own requests, then answers with a stale cached response instead if the
+     * response allows stale-if-error or the system is degraded.
+     */
+    private boolean answerProxyError(ResponseSink sink) throws IOException {
+        ResponseSink unwrapped = requestCoalescer.abandon(sink);
+        return unwrapped instanceof CachingResponseSink cachingSink && cachingSink.serveStale();
+    }
+
+    private void failWithBadGateway(HttpServletResponse httpResponse, ResponseSink sink) throws IOException {
+        if (!sink.isBegun() && !answerProxyError(sink)) {
+            httpResponse.setStatus(502);
+        }
+    }
+
+    private void writeError(HttpServletResponse httpResponse, ResponseSink sink, HttpProxyClient.ProxyResult result)
+            throws IOException {
+        // An attempt that started delivering may still resolve to an error if its body fails
+        // partway; the client already has the upstream status and part of its body.
+        if (result.body() == null || sink.isBegun() || httpResponse.isCommitted() || answerProxyError(sink)) {
+            return;
+        }
         httpResponse.setStatus(result.statusCode());
         httpResponse.setContentType("text/plain");
-        if (result.body() != null) {
-            httpResponse.getWriter().write(result.body());
+        httpResponse.getOutputStream().write(result.body().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void completeQuietly(AsyncContext asyncContext) {
+        try {
+            asyncContext.complete();
+        } catch (IllegalStateException e) {
+            log.debug("Async context already completed: {}", e.getMessage());
+        }
+    }
+
+    private record Admitted(Backend backend, CircuitGate.Admission admission) {
+    }
+
+    /**
+     * One request that may be sent to more than one backend. Attempt completions and the hedge
+     * timer are serialized on the exchange; it completes with the first attempt that starts
+     * delivering a response, or with the last failure once no further attempt is possible. A
+     * blocking exchange runs each attempt on the calling thread and is complete when
+     * {@link #start} returns.
+     */
+    private final class RetryingExchange {
+
+        private final long routingKey;
+        private final ProxyRequest proxyRequest;
+        private final ResponseSink sink;
+        private final boolean blocking;
+        private final AtomicReference<AttemptSink> owner = new AtomicReference<>();
+        private final CompletableFuture<HttpProxyClient.ProxyResult> completion = new CompletableFuture<>();
+        private final List<Backend> tried = new ArrayList<>(2);
+        private int outstanding;
+        private int extraAttempts;
+        private HttpProxyClient.ProxyResult lastFailure;
+        private Throwable lastError;
+
+        RetryingExchange(long routingKey, ProxyRequest proxyRequest, ResponseSink sink, boolean blocking) {
+            this.routingKey = routingKey;
+            this.proxyRequest = proxyRequest;
+            this.sink = sink;
+            this.blocking = blocking;
+        }
+
+        CompletableFuture<HttpProxyClient.ProxyResult> start(Admitted admitted) {
+            synchronized (this) {
+                launch(admitted);
+            }
+            ScheduledFuture<?> hedgeTimer = retryPolicy.scheduleHedge(admitted.backend(), this::hedge);
+            if (hedgeTimer != null) {
+                completion.whenComplete((result, error) -> hedgeTimer.cancel(false));
+            }
+            return completion;
+        }
+
+        private void launch(Admitted admitted) {
+            tried.add(admitted.backend());
+            outstanding++;
+            AttemptSink attemptSink = new AttemptSink(sink, owner, retryPolicy);
+            if (!blocking) {
+                attemptAsync(admitted, proxyRequest, attemptSink)
+                        .whenComplete((result, error) -> onAttemptComplete(attemptSink, result, error));
+                return;
+            }
+
+            HttpProxyClient.ProxyResult result;
+            try {
+                result = attempt(admitted, proxyRequest, attemptSink);
+            } catch (RuntimeException e) {
+                onAttemptComplete(attemptSink, null, e);
+                return;
+            }
+            onAttemptComplete(attemptSink, result, null);
+        }
+
+        private synchronized void onAttemptComplete(AttemptSink attemptSink, HttpProxyClient.ProxyResult result,
+                                                    Throwable error) {
+            outstanding--;
+            if (completion.isDone() || attemptSink.isLost()) {
+                return;
+            }
+
+            if (attemptSink.isDelivering()) {
+                if (error != null) {
+                    completion.completeExceptionally(error);
+                } else {
+                    completion.complete(result);
+                }
+                return;
+            }
+
+            lastFailure = result;
+            lastError = error;
+            // A hedge still in flight may yet answer.
+            if (outstanding > 0 || retry(false)) {
+                return;
+            }
+
+            if (lastFailure != null) {
+                completion.complete(withErrorBody(lastFailure));
+            } else {
+                completion.completeExceptionally(lastError);
+            }
+        }
+
+        private synchronized void hedge() {
+            if (!completion.isDone() && owner.get() == null && outstanding > 0) {
+                retry(true);
+            }
+        }
+
+        private boolean retry(boolean hedge) {
+            if (extraAttempts >= retryPolicy.getMaxRetries()) {
+                return false;
+            }
+
+            Admitted alternative = acquireAlternative(routingKey, tried);
+            if (alternative == null) {
+                return false;
+            }
+            if (!retryPolicy.tryAcquire(hedge)) {
+                cancelAdmission(alternative);
+                log.debug("Retry budget exhausted for {} {}", proxyRequest.method(), proxyRequest.path());
+                return false;
+            }
+
+            extraAttempts++;
+            log.debug("{} {} {} on {} after {}", hedge ? "Hedging" : "Retrying", proxyRequest.method(),
+                    proxyRequest.path(), alternative.backend().getId(), tried.get(tried.size() - 1).getId());
+            launch(alternative);
+            return true;
+        }
+
+        /**
+         * Failed attempts discard retryable upstream responses, so the client gets a proxy
+         * generated error in their place.
+         */
+        private HttpProxyClient.ProxyResult withErrorBody(HttpProxyClient.ProxyResult result) {
+            if (result.body() != null) {
+                return result;
+            }
+            return new HttpProxyClient.ProxyResult(result.statusCode(),
+                    result.statusCode() == 504 ? "Gateway Timeout" : "Bad Gateway",
+                    result.poolWaitNanos(), result.firstByteNanos(), result.latencyNanos(), result.flags());
         }
     }
 }
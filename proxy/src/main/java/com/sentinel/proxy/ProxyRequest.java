@@ -0,0 +1,15 @@
+package com.sentinel.proxy;
+
+import java.io.InputStream;
+
+public record ProxyRequest(String method, String path, String query, String[] headers,
+                           InputStream body, long contentLength) {
+
+    public boolean hasBody() {
+        return body != null && contentLength != 0;
+    }
+
+    public String pathWithQuery() {
+        return query == null ? path : path + "?" + query;
+    }
+}
@@ -0,0 +1,105 @@
+package com.sentinel.proxy;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lossy striped buffer of cache reads, replayed into the eviction policy by whoever holds its lock.
+ * A reader picks a stripe by thread id and claims one slot with a single CAS; if the stripe is
+ * full or the CAS loses, the read is dropped rather than retried, since the policy only needs a
+ * sample. Each stripe is a small ring of preallocated slots published by sequence number, like
+ * {@link com.sentinel.metrics.OutcomeRingBuffer}.
+ * <p>
+ * {@link #drainTo} must be called with the policy lock held.
+ */
+final class ReadBuffer<E> {
+
+    static final int RECORDED = 0;
+    static final int FULL = 1;
+    static final int CONTENDED = 2;
+
+    private static final int STRIPE_CAPACITY = 16;
+    private static final int MAX_STRIPES = 64;
+
+    @FunctionalInterface
+    interface Handler<E> {
+        void onRead(long hash, E element);
+    }
+
+    private final Stripe<E>[] stripes;
+    private final int stripeMask;
+
+    @SuppressWarnings("unchecked")
+    ReadBuffer() {
+        int wanted = Math.min(MAX_STRIPES, 4 * Runtime.getRuntime().availableProcessors());
+        int count = Integer.highestOneBit(Math.max(1, wanted - 1) << 1);
+        this.stripes = (Stripe<E>[]) new Stripe<?>[count];
+        this.stripeMask = count - 1;
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe<>();
+        }
+    }
+
+    /**
+     * Records a read of {@code element}, which may be null for a miss. Returns {@link #RECORDED},
+     * or {@link #FULL} or {@link #CONTENDED} if the read was dropped. A full stripe should be
+     * drained.
+     */
+    int offer(long hash, E element) {
+        long mixed = Thread.currentThread().threadId() * 0x9e3779b97f4a7c15L;
+        return stripes[(int) (mixed >>> 32) & stripeMask].offer(hash, element);
+    }
+
+    void drainTo(Handler<E> handler) {
+        for (Stripe<E> stripe : stripes) {
+            stripe.drainTo(handler);
+        }
+    }
+
+    private static final class Stripe<E> {
+        private final long[] hashes = new long[STRIPE_CAPACITY];
+        private final Object[] elements = new Object[STRIPE_CAPACITY];
+        private final AtomicLongArray published = new AtomicLongArray(STRIPE_CAPACITY);
+        private final AtomicLong cursor = new AtomicLong();
+        private volatile long consumed;
+
+        Stripe() {
+            for (int i = 0; i < STRIPE_CAPACITY; i++) {
+                published.set(i, -1);
+            }
+        }
+
+        int offer(long hash, E element) {
+            long sequence = cursor.get();
+            if (sequence - consumed >= STRIPE_CAPACITY) {
+                return FULL;
+            }
+            if (!cursor.compareAndSet(sequence, sequence + 1)) {
+                return CONTENDED;
+            }
+
+            int slot = (int) (sequence & (STRIPE_CAPACITY - 1));
+            hashes[slot] = hash;
+            elements[slot] = element;
+            published.set(slot, sequence);
+            return RECORDED;
+        }
+
+        @SuppressWarnings("unchecked")
+        void drainTo(Handler<E> handler) {
+            long next = consumed;
+            while (true) {
+                int slot = (int) (next & (STRIPE_CAPACITY - 1));
+                if (published.get(slot) != next) {
+                    break;
+                }
+                E element = (E) elements[slot];
+                // Do not keep evicted entries reachable from the buffer.
+                elements[slot] = null;
+                handler.onRead(hashes[slot], element);
+                next++;
+            }
+            consumed = next;
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package com.sentinel.proxy;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Single-flight stage for bodyless GET requests. The first request for a key becomes the leader
+ * and goes upstream as usual while its response is copied; identical requests arriving before it
+ * finishes wait for that copy and replay it instead of reaching a backend. The key is the path,
+ * query and the headers that usually select a representation (Accept, Accept-Encoding,
+ * Accept-Language), plus any validators the response cache added. Requests with Authorization,
+ * Cookie, Range or conditional headers are never coalesced, since their responses are not
+ * interchangeable. Nor are responses that set cookies, are private or no-store, or vary on any
+ * other header; followers of such a leader send their own requests.
+ * <p>
+ * Followers fall back to their own upstream request if the leader's response is larger than
+ * {@code maxResponseSize}, fails partway, or is replaced by a proxy generated error. They also fall
+ * back if it takes longer than half the request timeout, so a follower's latency stays within
+ * one and a half timeouts. In async mode followers are parked on their AsyncContext; otherwise they
+ * wait on their servlet thread.
+ * <p>
+ * With {@code spikeOnly} the stage is active only while the control loop reports a
+ * TRAFFIC_SPIKE.
+ */
+@Slf4j
+@Component
+public class RequestCoalescer {
+
+    private static final String[] KEY_HEADERS = {
+        "Accept", "Accept-Encoding", "Accept-Language", "If-None-Match", "If-Modified-Since"
+    };
+    private static final String[] EXCLUDED_HEADERS = {
+        "Authorization", "Cookie", "Range",
+        "If-None-Match", "If-Modified-Since", "If-Match", "If-Unmodified-Since", "If-Range"
+    };
+
+    private final boolean enabled;
+    private final boolean spikeOnly;
+    private final List<String> pathPatterns;
+    private final int maxResponseBytes;
+    private final long waitTimeoutMillis;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final Map<String, Flight> inFlight = new ConcurrentHashMap<>();
+    private volatile boolean trafficSpike;
+
+    private final LongAdder leaders = new LongAdder();
+    private final LongAdder followers = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+
+    public RequestCoalescer(
+            @Value("${sentinel.proxy.coalescing.enabled:false}") boolean enabled,
+            @Value("${sentinel.proxy.coalescing.spikeOnly:false}") boolean spikeOnly,
+            @Value("${sentinel.proxy.coalescing.paths:/**}") List<String> pathPatterns,
+            @Value("${sentinel.proxy.coalescing.maxResponseSize:1024}") int maxResponseSizeKb,
+            @Value("${sentinel.proxy.requestTimeout:5000}") long requestTimeoutMillis,
+            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.spikeOnly = spikeOnly;
+        this.pathPatterns = pathPatterns;
+        this.maxResponseBytes = maxResponseSizeKb * 1024;
+        this.waitTimeoutMillis = requestTimeoutMillis / 2;
+
+        if (enabled) {
+            registerMeters(meterRegistry);
+        }
+
+        log.info("RequestCoalescer enabled={}, spikeOnly={}, paths={}, maxResponseSize={}KB",
+                enabled, spikeOnly, pathPatterns, maxResponseSizeKb);
+    }
+
+    /**
+     * Set by the control loop each tick from the overload classification.
+     */
+    public void setTrafficSpike(boolean trafficSpike) {
+        this.trafficSpike = trafficSpike;
+    }
+
+    /**
+     * Joins or starts the flight for {@code upstream}, the request about to be forwarded for
+     * {@code original}. Returns null if the request is not coalesced.
+     */
+    Membership join(ProxyRequest original, ProxyRequest upstream) {
+        if (!enabled || (spikeOnly && !trafficSpike) || !isEligible(original)) {
+            return null;
+        }
+
+        String key = key(upstream);
+        Flight flight = new Flight(key);
+        Flight existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            return new Membership(existing, false);
+        }
+
+        leaders.increment();
+        return new Membership(flight, true);
+    }
+
+    /**
+     * Waits on the calling thread for the leader of {@code flight} and replays its response into
+     * {@code sink}. Returns false, with nothing written, if the follower must send its own request
+     * instead.
+     */
+    boolean follow(Flight flight, ResponseSink sink) throws IOException {
+        return replay(await(flight).join(), sink);
+    }
+
+    /**
+     * The leader's response, or null once the follower should stop waiting and fall back.
+     */
+    CompletableFuture<SharedResponse> await(Flight flight) {
+        return flight.response.copy().completeOnTimeout(null, waitTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Replays a response from {@link #await} into {@code sink}. Returns false, with nothing
+     * written, if there is none and the follower must send its own request.
+     */
+    boolean replay(SharedResponse response, ResponseSink sink) throws IOException {
+        if (response == null) {
+            fallbacks.increment();
+            return false;
+        }
+
+        followers.increment();
+        sink.begin(response.statusCode(), response.headers());
+        if (response.length() > 0) {
+            sink.write(ByteBuffer.wrap(response.body(), 0, response.length()));
+        }
+        sink.end();
+        return true;
+    }
+
+    /**
+     * Sink for the leader's upstream request; shares the response with followers once complete.
+     */
+    ResponseSink leaderSink(Flight flight, ResponseSink delegate) {
+        return new LeaderSink(flight, delegate);
+    }
+
+    /**
+     * Releases followers of the leader behind {@code sink} to send their own requests, because
+     * the leader is answered with a proxy generated error. Returns the sink it wrapped.
+     */
+    ResponseSink abandon(ResponseSink sink) {
+        if (sink instanceof LeaderSink leaderSink) {
+            leaderSink.finish(null);
+            return leaderSink.delegate;
+        }
+        return sink;
+    }
+
+    /**
+     * Share of coalesced requests answered without a request of their own.
+     */
+    public double getCoalescingRatio() {
+        long total = leaders.sum() + followers.sum() + fallbacks.sum();
+        return total == 0 ? 0.0 : (double) followers.sum() / total;
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private boolean isEligible(ProxyRequest request) {
+        if (!"GET".equals(request.method()) || request.hasBody()) {
+            return false;
+        }
+        for (String name : EXCLUDED_HEADERS) {
+            if (ResponseCache.headerValue(request.headers(), name) != null) {
+                return false;
+            }
+        }
+        for (String pattern : pathPatterns) {
+            if (pathMatcher.match(pattern, request.path())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String key(ProxyRequest request) {
+        StringBuilder key = new StringBuilder(request.pathWithQuery());
+        for (String name : KEY_HEADERS) {
+            String value = ResponseCache.headerValue(request.headers(), name);
+            if (value != null) {
+                key.append('\n').append(name).append(':').append(value);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * False for responses meant for one client only: ones that set cookies, are private or
+     * no-store, or vary on a request header the key does not include.
+     */
+    private static boolean isShareable(HttpHeaders headers) {
+        if (headers.firstValue("Set-Cookie").isPresent()) {
+            return false;
+        }
+        CacheControl cacheControl = CacheControl.parse(headers.allValues("Cache-Control"));
+        if (cacheControl.isPrivate() || cacheControl.noStore()) {
+            return false;
+        }
+        for (String value : headers.allValues("Vary")) {
+            for (String name : value.split(",")) {
+                String trimmed = name.trim();
+                if (!trimmed.isEmpty() && !isKeyHeader(trimmed)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isKeyHeader(String name) {
+        for (String keyHeader : KEY_HEADERS) {
+            if (keyHeader.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void registerMeters(MeterRegistry registry) {
+        registerRequests(registry, "leader", leaders);
+        registerRequests(registry, "follower", followers);
+        registerRequests(registry, "fallback", fallbacks);
+
+        Gauge.builder("sentinel.coalescing.ratio", this, RequestCoalescer::getCoalescingRatio)
+                .description("Share of coalescable requests answered by another request's upstream call")
+                .register(registry);
+        Gauge.builder("sentinel.coalescing.inflight", this, RequestCoalescer::getInFlightCount)
+                .register(registry);
+    }
+
+    private static void registerRequests(MeterRegistry registry, String role, LongAdder counter) {
+        FunctionCounter.builder("sentinel.coalescing.requests", counter, LongAdder::sum)
+                .tag("role", role)
+                .register(registry);
+    }
+
+    record SharedResponse(int statusCode, HttpHeaders headers, byte[] body, int length) {
+    }
+
+    record Membership(Flight flight, boolean leader) {
+    }
+
+    final class Flight {
+        private final String key;
+        private final CompletableFuture<SharedResponse> response = new CompletableFuture<>();
+
+        private Flight(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Publishes the leader's outcome, null if followers must fall back, and closes the flight
+         * so later requests start a new one.
+         */
+        private void complete(SharedResponse shared) {
+            inFlight.remove(key, this);
+            response.complete(shared);
+        }
+    }
+
+    /**
+     * Copies the leader's response while passing it through. Writes are not held back for the
+     * followers; they only see the response once the leader's has ended.
+     */
+    private final class LeaderSink implements ResponseSink {
+
+        private final Flight flight;
+        private final ResponseSink delegate;
+        private int statusCode;
+        private HttpHeaders headers;
+        private byte[] body;
+        private int length;
+        private boolean finished;
+
+        LeaderSink(Flight flight, ResponseSink delegate) {
+            this.flight = flight;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void begin(int statusCode, HttpHeaders headers) {
+            this.statusCode = statusCode;
+            this.headers = headers;
+            long contentLength = headers.firstValueAsLong("Content-Length").orElse(8 * 1024);
+            if (contentLength <= maxResponseBytes && isShareable(headers)) {
+                body = new byte[(int) contentLength];
+            }
+            delegate.begin(statusCode, headers);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer) throws IOException {
+            if (body != null) {
+                capture(buffer);
+            }
+            delegate.write(buffer);
+        }
+
+        @Override
+        public void end() throws IOException {
+            // The leader's own response is finished before followers are released.
+            SharedResponse shared = body == null ? null : new SharedResponse(statusCode, headers, body, length);
+            try {
+                delegate.end();
+            } finally {
+                finish(shared);
+            }
+        }
+
+        @Override
+        public void abort() throws IOException {
+            try {
+                delegate.abort();
+            } finally {
+                finish(null);
+            }
+        }
+
+        @Override
+        public boolean isBegun() {
+            return delegate.isBegun();
+        }
+
+        void finish(SharedResponse shared) {
+            if (!finished) {
+                finished = true;
+                body = null;
+                flight.complete(shared);
+            }
+        }
+
+        private void capture(ByteBuffer buffer) {
+            int size = buffer.remaining();
+            if (length + size > maxResponseBytes) {
+                body = null;
+                return;
+            }
+            if (length + size > body.length) {
+                body = Arrays.copyOf(body, (int) Math.min(Math.max(body.length * 2L, length + size), maxResponseBytes));
+            }
+            buffer.get(buffer.position(), body, length, size);
+            length += size;
+        }
+    }
+}
@@ -1,55 +1,69 @@
 package com.sentinel.proxy;
 
 import com.sentinel.model.Backend;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
-import java.util.List;
+import java.util.Collection;
 import java.util.Optional;
-import java.util.concurrent.ThreadLocalRandom;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class RequestRouter {
 
+    private static final int ALTERNATIVE_SELECTIONS = 3;
+
     private final BackendPool backendPool;
+    private final RoutingStrategy routingStrategy;
+
+    public long routingKey(HttpServletRequest request) {
+        return routingStrategy.routingKey(request);
+    }
 
-    public Optional<Backend> selectBackend() {
-        List<Backend> available = backendPool.getAvailableBackends();
+    public Optional<Backend> selectBackend(long routingKey) {
+        RoutingTable table = backendPool.getRoutingTable();
 
-        if (available.isEmpty()) {
+        if (table.isEmpty()) {
             log.warn("No available backends for routing");
             return Optional.empty();
         }
 
-        if (available.size() == 1) {
-            return Optional.of(available.get(0));
+        if (table.size() == 1) {
+            return Optional.of(table.get(0));
         }
 
-        return weightedRandomSelection(available);
+        return Optional.of(routingStrategy.select(table, routingKey));
     }
 
-    private Optional<Backend> weightedRandomSelection(List<Backend> backends) {
-        int totalWeight = backends.stream()
-                .mapToInt(Backend::getEffectiveWeight)
-                .sum();
+    /**
+     * Selects a backend outside {@code excluded}, for sending a request somewhere it has not been
+     * yet. Falls back to a scan of the routing table if the strategy keeps choosing excluded ones.
+     */
+    public Optional<Backend> selectAlternative(long routingKey, Collection<Backend> excluded) {
+        RoutingTable table = backendPool.getRoutingTable();
 
-        if (totalWeight == 0) {
-            return Optional.of(backends.get(ThreadLocalRandom.current().nextInt(backends.size())));
+        Backend preferred = routingStrategy.selectAlternative(table, routingKey, excluded);
+        if (preferred != null) {
+            return Optional.of(preferred);
         }
 
-        int random = ThreadLocalRandom.current().nextInt(totalWeight);
-        int currentSum = 0;
-
-        for (Backend backend : backends) {
-            currentSum += backend.getEffectiveWeight();
-            if (random < currentSum) {
-                return Optional.of(backend);
+        if (table.size() > excluded.size()) {
+            for (int i = 0; i < ALTERNATIVE_SELECTIONS; i++) {
+                Backend candidate = routingStrategy.select(table);
+                if (!excluded.contains(candidate)) {
+                    return Optional.of(candidate);
+                }
             }
         }
 
-        return Optional.of(backends.get(backends.size() - 1));
+        for (int i = 0; i < table.size(); i++) {
+            if (!excluded.contains(table.get(i))) {
+                return Optional.of(table.get(i));
+            }
+        }
+        return Optional.empty();
     }
 }
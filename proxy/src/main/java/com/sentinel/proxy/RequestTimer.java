@@ -0,0 +1,34 @@
+package com.sentinel.proxy;
+
+/**
+ * Monotonic phase timestamps for one forwarded request. The pool wait ends once a permit of the
+ * backend's connection pool has been obtained and the request is handed to the HTTP client. It
+ * does not include the TCP connect, which the JDK client performs later, if at all; first byte is
+ * when the response status line and headers arrive. Phases that were never reached report -1.
+ */
+final class RequestTimer {
+
+    private final long startNanos = System.nanoTime();
+    private long acquiredNanos = -1;
+    private long firstByteNanos = -1;
+
+    void markAcquired() {
+        acquiredNanos = System.nanoTime();
+    }
+
+    void markFirstByte() {
+        firstByteNanos = System.nanoTime();
+    }
+
+    long poolWaitNanos() {
+        return acquiredNanos < 0 ? -1 : acquiredNanos - startNanos;
+    }
+
+    long firstByteNanos() {
+        return firstByteNanos < 0 ? -1 : firstByteNanos - startNanos;
+    }
+
+    long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+}
@@ -0,0 +1,682 @@
+package com.sentinel.proxy;
+
+import com.sentinel.model.SystemMode;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Optional shared cache for bodyless GET responses, consulted before a request is routed.
+ * Freshness comes from the response's s-maxage, max-age or Expires. Responses that are no-store,
+ * private or no-cache, set cookies or vary on everything are not stored. A stale response with a
+ * validator is revalidated with a conditional request, and a 304 refreshes the stored copy.
+ * <p>
+ * Within its stale-while-revalidate window a stale response is served at once and refreshed in
+ * the background. Within its stale-if-error window it stands in for a failed upstream response.
+ * While the control loop reports the system as DEGRADING or OVERLOADED both windows are at least
+ * {@code degradedStaleTime}, so repeat requests stop reaching struggling backends. Responses marked
+ * must-revalidate are never served stale.
+ * <p>
+ * Eviction is W-TinyLFU over body and header bytes. New entries enter a small LRU window. An entry
+ * pushed out of the window only displaces the main area's least recently used entry if a
+ * frequency sketch has seen its key more often. The main area is split into probation and
+ * protected segments.
+ */
+@Slf4j
+@Component
+public class ResponseCache {
+
+    enum Status {
+        BYPASS,
+        MISS,
+        HIT,
+        STALE,
+        REVALIDATE
+    }
+
+    /**
+     * The cache's decision for one request. {@code request} is what to send upstream, with the
+     * stored response's validators added when {@code validating}; {@code staleOnError} means
+     * {@code entry} may replace a failed response.
+     */
+    record Lookup(Status status, String key, ProxyRequest request, CachedResponse entry,
+                  boolean validating, boolean staleOnError) {
+    }
+
+    private static final Set<Integer> STORABLE_STATUSES = Set.of(200, 203, 204, 300, 301, 404, 410);
+    private static final String[] CONDITIONAL_HEADERS = {
+        "If-None-Match", "If-Modified-Since", "If-Match", "If-Unmodified-Since", "If-Range"
+    };
+    private static final int REMOVED = -1;
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final boolean enabled;
+    private final long maxBytes;
+    private final int maxEntryBytes;
+    private final long windowMaxBytes;
+    private final long protectedMaxBytes;
+    private final long degradedStaleNanos;
+    private final ExecutorService revalidator;
+
+    private final Map<String, Node> entries = new ConcurrentHashMap<>();
+    private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock policyLock = new ReentrantLock();
+    private final ReadBuffer<Node> readBuffer = new ReadBuffer<>();
+    private final ReadBuffer.Handler<Node> replayRead = this::replayRead;
+    private final FrequencySketch sketch;
+    private final AccessOrder window = new AccessOrder();
+    private final AccessOrder probation = new AccessOrder();
+    private final AccessOrder protectedSegment = new AccessOrder();
+    private volatile long weightedSize;
+    private volatile SystemMode systemMode = SystemMode.STABLE;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder staleOnError = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ResponseCache(
+            @Value("${sentinel.proxy.cache.enabled:false}") boolean enabled,
+            @Value("${sentinel.proxy.cache.maxSize:64}") int maxSizeMb,
+            @Value("${sentinel.proxy.cache.maxEntrySize:1024}") int maxEntrySizeKb,
+            @Value("${sentinel.proxy.cache.degradedStaleTime:60}") int degradedStaleSeconds,
+            @Value("${sentinel.proxy.cache.revalidationThreads:4}") int revalidationThreads,
+            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxBytes = maxSizeMb * 1024L * 1024L;
+        this.windowMaxBytes = Math.max(1, maxBytes / 100);
+        this.protectedMaxBytes = (maxBytes - windowMaxBytes) * 4 / 5;
+        this.maxEntryBytes = (int) Math.min(maxEntrySizeKb * 1024L, maxBytes - windowMaxBytes);
+        this.degradedStaleNanos = TimeUnit.SECONDS.toNanos(degradedStaleSeconds);
+        this.sketch = new FrequencySketch((int) Math.min(1 << 20, Math.max(1024, maxBytes / 8192)));
+        this.revalidator = enabled
+                ? Executors.newFixedThreadPool(revalidationThreads, Thread.ofPlatform()
+                        .name("cache-revalidate-", 0)
+                        .daemon(true)
+                        .factory())
+                : null;
+
+        if (enabled) {
+            registerMeters(meterRegistry);
+        }
+
+        log.info("ResponseCache enabled={}, maxSize={}MB, maxEntrySize={}KB, degradedStaleTime={}s",
+                enabled, maxSizeMb, maxEntrySizeKb, degradedStaleSeconds);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (revalidator != null) {
+            revalidator.shutdownNow();
+        }
+    }
+
+    /**
+     * Set by the control loop each tick; DEGRADING and OVERLOADED widen the stale windows.
+     */
+    public void setSystemMode(SystemMode systemMode) {
+        this.systemMode = systemMode;
+    }
+
+    Lookup lookup(ProxyRequest request) {
+        if (!enabled || !"GET".equals(request.method()) || request.hasBody()) {
+            return bypass(request);
+        }
+
+        String[] headers = request.headers();
+        if (headerValue(headers, "Authorization") != null || headerValue(headers, "Range") != null) {
+            return bypass(request);
+        }
+
+        CacheControl requestControl = CacheControl.parse(headerValues(headers, "Cache-Control"));
+        if (requestControl.noStore()) {
+            return bypass(request);
+        }
+
+        String key = request.pathWithQuery();
+        Node node = entries.get(key);
+        recordAccess(key, node);
+
+        CachedResponse entry = node == null ? null : node.entry;
+        if (entry == null || !entry.matches(headers)) {
+            misses.increment();
+            return new Lookup(Status.MISS, key, request, null, false, false);
+        }
+
+        long now = System.nanoTime();
+        boolean clientRevalidates = requestControl.noCache() || requestControl.maxAge() == 0
+                || "no-cache".equalsIgnoreCase(headerValue(headers, "Pragma"));
+        if (!clientRevalidates && entry.isFresh(now)) {
+            hits.increment();
+            return new Lookup(Status.HIT, key, request, entry, false, false);
+        }
+
+        ProxyRequest conditional = conditional(request, entry);
+        ProxyRequest upstream = conditional == null ? request : conditional;
+        long stale = entry.staleNanos(now);
+
+        if (!clientRevalidates && !entry.isMustRevalidate()
+                && stale <= staleWindow(entry.getStaleWhileRevalidateNanos())) {
+            staleHits.increment();
+            return new Lookup(Status.STALE, key, upstream, entry, conditional != null, false);
+        }
+
+        revalidations.increment();
+        boolean fallback = !entry.isMustRevalidate() && stale <= staleWindow(entry.getStaleIfErrorNanos());
+        return new Lookup(Status.REVALIDATE, key, upstream, entry, conditional != null, fallback);
+    }
+
+    /**
+     * Sink for a request that goes upstream: stores the response if it is cacheable.
+     */
+    ResponseSink sink(Lookup lookup, ResponseSink delegate) {
+        return lookup.status() == Status.BYPASS ? delegate : new CachingResponseSink(this, lookup, delegate, true);
+    }
+
+    /**
+     * Sink for replaying a response that was fetched and stored for another request with the same
+     * key: 304s and errors are translated as in {@link #sink}, but nothing is stored again.
+     */
+    ResponseSink replaySink(Lookup lookup, ResponseSink delegate) {
+        return lookup.status() == Status.BYPASS ? delegate : new CachingResponseSink(this, lookup, delegate, false);
+    }
+
+    /**
+     * Answers a HIT or STALE lookup from the stored response.
+     */
+    void serve(Lookup lookup, ResponseSink sink) throws IOException {
+        CachedResponse entry = lookup.entry();
+        entry.begin(sink, lookup.status() == Status.HIT ? "HIT" : "STALE", System.nanoTime());
+        entry.writeBody(sink);
+        sink.end();
+        bytesSaved.add(entry.getBody().capacity());
+    }
+
+    /**
+     * Runs {@code exchange}, which refreshes a STALE lookup's entry, on a background thread unless
+     * a refresh of the same key is already under way.
+     */
+    void revalidateInBackground(Lookup lookup, Runnable exchange) {
+        if (!revalidating.add(lookup.key())) {
+            return;
+        }
+
+        try {
+            revalidator.execute(() -> {
+                try {
+                    exchange.run();
+                } catch (RuntimeException e) {
+                    log.debug("Background revalidation of {} failed: {}", lookup.key(), e.getMessage());
+                } finally {
+                    revalidating.remove(lookup.key());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            revalidating.remove(lookup.key());
+        }
+    }
+
+    boolean isStorable(int statusCode, HttpHeaders headers) {
+        if (!STORABLE_STATUSES.contains(statusCode)) {
+            return false;
+        }
+
+        CacheControl cacheControl = CacheControl.parse(headers.allValues("Cache-Control"));
+        if (cacheControl.noStore() || cacheControl.noCache() || cacheControl.isPrivate()) {
+            return false;
+        }
+        if (headers.firstValue("Set-Cookie").isPresent() || varyNames(headers) == null) {
+            return false;
+        }
+        if (headers.firstValueAsLong("Content-Length").orElse(0) > maxEntryBytes) {
+            return false;
+        }
+        return freshnessNanos(headers, cacheControl) > 0;
+    }
+
+    /**
+     * Stores a response that passed {@link #isStorable}, copying the body off-heap.
+     */
+    void store(Lookup lookup, int statusCode, HttpHeaders headers, byte[] body, int length) {
+        ByteBuffer stored = ByteBuffer.allocateDirect(length);
+        stored.put(body, 0, length).flip();
+        put(lookup.key(), newEntry(lookup, statusCode, headers, stored.asReadOnlyBuffer()));
+    }
+
+    /**
+     * Applies a 304 to the entry that was revalidated and returns the response to serve.
+     */
+    CachedResponse refresh(Lookup lookup, HttpHeaders notModifiedHeaders) {
+        CachedResponse entry = lookup.entry();
+        notModified.increment();
+        bytesSaved.add(entry.getBody().capacity());
+
+        Map<String, List<String>> merged = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        merged.putAll(entry.getHeaders().map());
+        notModifiedHeaders.map().forEach((name, values) -> {
+            if (!name.equalsIgnoreCase("Content-Length")) {
+                merged.put(name, values);
+            }
+        });
+        HttpHeaders headers = HttpHeaders.of(merged, (name, value) -> true);
+
+        if (!isStorable(entry.getStatusCode(), headers)) {
+            return entry;
+        }
+        CachedResponse refreshed = newEntry(lookup, entry.getStatusCode(), headers, entry.getBody());
+        put(lookup.key(), refreshed);
+        return refreshed;
+    }
+
+    void recordStaleOnError(CachedResponse entry) {
+        staleOnError.increment();
+        bytesSaved.add(entry.getBody().capacity());
+    }
+
+    int getMaxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Share of cacheable requests answered with a stored body, including stale and 304-refreshed
+     * ones.
+     */
+    public double getHitRatio() {
+        long lookups = hits.sum() + staleHits.sum() + misses.sum() + revalidations.sum();
+        if (lookups == 0) {
+            return 0.0;
+        }
+        long served = hits.sum() + staleHits.sum() + notModified.sum() + staleOnError.sum();
+        return (double) served / lookups;
+    }
+
+    public long getBytesSaved() {
+        return bytesSaved.sum();
+    }
+
+    public long getWeightedSize() {
+        return weightedSize;
+    }
+
+    public int getEntryCount() {
+        return entries.size();
+    }
+
+    static String headerValue(String[] headers, String name) {
+        String value = null;
+        for (int i = 0; i + 1 < headers.length; i += 2) {
+            if (headers[i].equalsIgnoreCase(name)) {
+                value = value == null ? headers[i + 1] : value + ", " + headers[i + 1];
+            }
+        }
+        return value;
+    }
+
+    private static List<String> headerValues(String[] headers, String name) {
+        String value = headerValue(headers, name);
+        return value == null ? List.of() : List.of(value);
+    }
+
+    private Lookup bypass(ProxyRequest request) {
+        return new Lookup(Status.BYPASS, null, request, null, false, false);
+    }
+
+    private long staleWindow(long declaredNanos) {
+        SystemMode mode = systemMode;
+        boolean degraded = mode == SystemMode.DEGRADING || mode == SystemMode.OVERLOADED;
+        return degraded ? Math.max(declaredNanos, degradedStaleNanos) : declaredNanos;
+    }
+
+    /**
+     * {@code request} with the stored response's validators, or null if it has none or the
+     * client sent its own conditional headers.
+     */
+    private ProxyRequest conditional(ProxyRequest request, CachedResponse entry) {
+        for (String name : CONDITIONAL_HEADERS) {
+            if (headerValue(request.headers(), name) != null) {
+                return null;
+            }
+        }
+
+        String etag = entry.getHeaders().firstValue("ETag").orElse(null);
+        String lastModified = entry.getHeaders().firstValue("Last-Modified").orElse(null);
+        if (etag == null && lastModified == null) {
+            return null;
+        }
+
+        List<String> headers = new ArrayList<>(Arrays.asList(request.headers()));
+        if (etag != null) {
+            headers.add("If-None-Match");
+            headers.add(etag);
+        }
+        if (lastModified != null) {
+            headers.add("If-Modified-Since");
+            headers.add(lastModified);
+        }
+        return new ProxyRequest(request.method(), request.path(), request.query(),
+                headers.toArray(new String[0]), request.body(), request.contentLength());
+    }
+
+    private CachedResponse newEntry(Lookup lookup, int statusCode, HttpHeaders headers, ByteBuffer body) {
+        CacheControl cacheControl = CacheControl.parse(headers.allValues("Cache-Control"));
+        String[] varyNames = varyNames(headers);
+        String[] varyValues = new String[varyNames.length];
+        for (int i = 0; i < varyNames.length; i++) {
+            varyValues[i] = headerValue(lookup.request().headers(), varyNames[i]);
+        }
+
+        long initialAgeNanos = TimeUnit.SECONDS.toNanos(Math.max(0, headers.firstValueAsLong("Age").orElse(0)));
+        return new CachedResponse(statusCode, headers, body, System.nanoTime(), initialAgeNanos,
+                freshnessNanos(headers, cacheControl), cacheControl, varyNames, varyValues);
+    }
+
+    /**
+     * Header names listed in Vary, or null for {@code Vary: *}.
+     */
+    private static String[] varyNames(HttpHeaders headers) {
+        List<String> names = new ArrayList<>();
+        for (String value : headers.allValues("Vary")) {
+            for (String name : value.split(",")) {
+                String trimmed = name.trim();
+                if (trimmed.equals("*")) {
+                    return null;
+                }
+                if (!trimmed.isEmpty()) {
+                    names.add(trimmed);
+                }
+            }
+        }
+        return names.toArray(new String[0]);
+    }
+
+    private static long freshnessNanos(HttpHeaders headers, CacheControl cacheControl) {
+        long maxAge = cacheControl.sharedMaxAge();
+        if (maxAge >= 0) {
+            return TimeUnit.SECONDS.toNanos(maxAge);
+        }
+
+        ZonedDateTime expires = headers.firstValue("Expires").map(ResponseCache::parseDate).orElse(null);
+        if (expires == null) {
+            return 0;
+        }
+        ZonedDateTime date = headers.firstValue("Date").map(ResponseCache::parseDate)
+                .orElseGet(() -> ZonedDateTime.now(ZoneOffset.UTC));
+        return Math.max(0, Duration.between(date, expires).toNanos());
+    }
+
+    private static ZonedDateTime parseDate(String value) {
+        try {
+            return ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Buffers the access for the eviction policy, which replays it into the frequency sketch and
+     * the entry's recency on the next write, or as soon as the reader's stripe fills up and the
+     * policy lock is free. Reads arriving at a full stripe are dropped; a lost sample only blurs
+     * the statistics.
+     */
+    private void recordAccess(String key, Node node) {
+        long hash = node != null ? node.hash : HashRing.hash(key);
+        if (readBuffer.offer(hash, node) == ReadBuffer.FULL && policyLock.tryLock()) {
+            try {
+                drainReads();
+                // The read that found the stripe full was not buffered; apply it under the lock.
+                replayRead(hash, node);
+            } finally {
+                policyLock.unlock();
+            }
+        }
+    }
+
+    private void drainReads() {
+        readBuffer.drainTo(replayRead);
+    }
+
+    private void replayRead(long hash, Node node) {
+        sketch.increment(hash);
+        if (node != null) {
+            onHit(node);
+        }
+    }
+
+    private void put(String key, CachedResponse entry) {
+        policyLock.lock();
+        try {
+            drainReads();
+            Node node = entries.get(key);
+            if (node != null && node.queue != REMOVED) {
+                AccessOrder segment = segment(node.queue);
+                segment.remove(node);
+                weightedSize += entry.getWeight() - node.weight;
+                node.entry = entry;
+                node.weight = entry.getWeight();
+                segment.addLast(node);
+            } else {
+                node = new Node(key, HashRing.hash(key), entry);
+                node.queue = WINDOW;
+                entries.put(key, node);
+                window.addLast(node);
+                weightedSize += node.weight;
+            }
+            evict();
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    private void onHit(Node node) {
+        switch (node.queue) {
+            case WINDOW -> window.moveToLast(node);
+            case PROTECTED -> protectedSegment.moveToLast(node);
+            case PROBATION -> {
+                probation.remove(node);
+                node.queue = PROTECTED;
+                protectedSegment.addLast(node);
+                demoteProtectedOverflow();
+            }
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Restores the size bounds after an insert or an in-place update. A replaced entry can grow a
+     * main segment as well as the window, so the main area is trimmed too, least recently used
+     * first.
+     */
+    private void evict() {
+        while (window.weight > windowMaxBytes) {
+            Node candidate = window.first();
+            window.remove(candidate);
+            admit(candidate);
+        }
+
+        demoteProtectedOverflow();
+        long mainMaxBytes = maxBytes - windowMaxBytes;
+        while (probation.weight + protectedSegment.weight > mainMaxBytes) {
+            Node victim = probation.first() != null ? probation.first() : protectedSegment.first();
+            segment(victim.queue).remove(victim);
+            discard(victim);
+        }
+    }
+
+    private void demoteProtectedOverflow() {
+        while (protectedSegment.weight > protectedMaxBytes) {
+            Node demoted = protectedSegment.first();
+            protectedSegment.remove(demoted);
+            demoted.queue = PROBATION;
+            probation.addLast(demoted);
+        }
+    }
+
+    /**
+     * Moves a node leaving the window into probation, evicting main entries the sketch has seen
+     * less often to make room. If a victim is at least as popular, the candidate is evicted.
+     */
+    private void admit(Node candidate) {
+        long mainMaxBytes = maxBytes - windowMaxBytes;
+        int candidateFrequency = sketch.frequency(candidate.hash);
+
+        while (probation.weight + protectedSegment.weight + candidate.weight > mainMaxBytes) {
+            Node victim = probation.first() != null ? probation.first() : protectedSegment.first();
+            if (victim == null || sketch.frequency(victim.hash) >= candidateFrequency) {
+                discard(candidate);
+                return;
+            }
+            segment(victim.queue).remove(victim);
+            discard(victim);
+        }
+
+        candidate.queue = PROBATION;
+        probation.addLast(candidate);
+    }
+
+    private void discard(Node node) {
+        node.queue = REMOVED;
+        entries.remove(node.key, node);
+        weightedSize -= node.weight;
+        evictions.increment();
+    }
+
+    private AccessOrder segment(int queue) {
+        return switch (queue) {
+            case WINDOW -> window;
+            case PROBATION -> probation;
+            default -> protectedSegment;
+        };
+    }
+
+    private void registerMeters(MeterRegistry registry) {
+        registerRequests(registry, "hit", hits);
+        registerRequests(registry, "stale", staleHits);
+        registerRequests(registry, "miss", misses);
+        registerRequests(registry, "revalidate", revalidations);
+        registerRequests(registry, "not_modified", notModified);
+        registerRequests(registry, "stale_on_error", staleOnError);
+
+        FunctionCounter.builder("sentinel.cache.bytes.saved", bytesSaved, LongAdder::sum)
+                .description("Response body bytes served from the cache instead of a backend")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("sentinel.cache.evictions", evictions, LongAdder::sum)
+                .register(registry);
+        Gauge.builder("sentinel.cache.hit.ratio", this, ResponseCache::getHitRatio)
+                .description("Share of cacheable requests answered from the cache")
+                .register(registry);
+        Gauge.builder("sentinel.cache.size", this, ResponseCache::getWeightedSize)
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("sentinel.cache.entries", this, ResponseCache::getEntryCount)
+                .register(registry);
+    }
+
+    private static void registerRequests(MeterRegistry registry, String result, LongAdder counter) {
+        FunctionCounter.builder("sentinel.cache.requests", counter, LongAdder::sum)
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private static final class Node {
+        final String key;
+        final long hash;
+        volatile CachedResponse entry;
+        int weight;
+        int queue;
+        Node previous;
+        Node next;
+
+        Node(String key, long hash, CachedResponse entry) {
+            this.key = key;
+            this.hash = hash;
+            this.entry = entry;
+            this.weight = entry.getWeight();
+        }
+    }
+
+    /**
+     * Intrusive LRU list that tracks the total weight of its nodes.
+     */
+    private static final class AccessOrder {
+        private Node head;
+        private Node tail;
+        long weight;
+
+        Node first() {
+            return head;
+        }
+
+        void addLast(Node node) {
+            node.previous = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            weight += node.weight;
+        }
+
+        void remove(Node node) {
+            if (node.previous == null) {
+                head = node.next;
+            } else {
+                node.previous.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.previous;
+            } else {
+                node.next.previous = node.previous;
+            }
+            node.previous = null;
+            node.next = null;
+            weight -= node.weight;
+        }
+
+        void moveToLast(Node node) {
+            if (tail != node) {
+                remove(node);
+                addLast(node);
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.sentinel.proxy;
+
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+import java.nio.ByteBuffer;
+
+public interface ResponseSink {
+
+    /**
+     * Accepts and drops a response, for requests the proxy sends on its own behalf.
+     */
+    ResponseSink NONE = new ResponseSink() {
+        @Override
+        public void begin(int statusCode, HttpHeaders headers) {
+        }
+
+        @Override
+        public void write(ByteBuffer buffer) {
+            buffer.position(buffer.limit());
+        }
+
+        @Override
+        public void end() {
+        }
+
+        @Override
+        public boolean isBegun() {
+            return false;
+        }
+    };
+
+    void begin(int statusCode, HttpHeaders headers);
+
+    void write(ByteBuffer buffer) throws IOException;
+
+    void end() throws IOException;
+
+    /**
+     * Closes the response after the upstream body or the client connection failed partway.
+     */
+    default void abort() throws IOException {
+        end();
+    }
+
+    /**
+     * True once a response has started on this sink. After that the proxy must not answer with an
+     * error of its own, even if the exchange later fails.
+     */
+    boolean isBegun();
+}
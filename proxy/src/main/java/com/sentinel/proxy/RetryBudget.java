@@ -0,0 +1,52 @@
+package com.sentinel.proxy;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket shared by all retries and hedges. Every proxied request earns
+ * {@code percent / 100} of a token and every extra attempt spends a whole one, so in steady state
+ * extra attempts stay within that share of traffic however badly backends are failing; the burst
+ * size caps how many can be saved up while everything is healthy.
+ * <p>
+ * Balances are kept in thousandths of a token. A full bucket is only read on deposit, so healthy
+ * traffic does not contend on it.
+ */
+class RetryBudget {
+
+    private static final long SCALE = 1000;
+
+    private final long depositPerRequest;
+    private final long capacity;
+    private final AtomicLong balance;
+
+    RetryBudget(double percent, int burst) {
+        this.depositPerRequest = Math.max(1, Math.round(percent * SCALE / 100.0));
+        this.capacity = burst * SCALE;
+        this.balance = new AtomicLong(capacity);
+    }
+
+    /**
+     * Credits one request. Concurrent deposits may overshoot the capacity by a few requests'
+     * worth, which is harmless.
+     */
+    void deposit() {
+        if (balance.get() < capacity) {
+            balance.addAndGet(depositPerRequest);
+        }
+    }
+
+    boolean tryWithdraw() {
+        long current;
+        do {
+            current = balance.get();
+            if (current < SCALE) {
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - SCALE));
+        return true;
+    }
+
+    double getTokens() {
+        return (double) balance.get() / SCALE;
+    }
+}
@@ -0,0 +1,150 @@
+package com.sentinel.proxy;
+
+import com.sentinel.metrics.BackendMetrics;
+import com.sentinel.metrics.MetricsRegistry;
+import com.sentinel.model.Backend;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides which requests may be sent to a second backend and when. A bodyless request with an
+ * idempotent method is retried on another backend after a connect error, timeout, 502 or 504,
+ * and with hedging enabled a second copy is sent once the first has been outstanding for longer
+ * than its backend's p95. Every extra attempt, retry or hedge, spends a token from one global
+ * {@link RetryBudget}.
+ */
+@Slf4j
+@Component
+public class RetryPolicy {
+
+    private final boolean enabled;
+    private final int maxRetries;
+    private final boolean hedging;
+    private final RetryBudget budget;
+    private final MetricsRegistry metricsRegistry;
+    private final ScheduledThreadPoolExecutor hedgeScheduler;
+
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder budgetRejections = new LongAdder();
+
+    public RetryPolicy(
+            @Value("${sentinel.proxy.retry.enabled:false}") boolean enabled,
+            @Value("${sentinel.proxy.retry.maxRetries:1}") int maxRetries,
+            @Value("${sentinel.proxy.retry.hedging:false}") boolean hedging,
+            @Value("${sentinel.proxy.retry.budgetPercent:10.0}") double budgetPercent,
+            @Value("${sentinel.proxy.retry.budgetBurst:20}") int budgetBurst,
+            MetricsRegistry metricsRegistry) {
+        this.enabled = enabled;
+        this.maxRetries = maxRetries;
+        this.hedging = hedging;
+        this.budget = new RetryBudget(budgetPercent, budgetBurst);
+        this.metricsRegistry = metricsRegistry;
+        this.hedgeScheduler = enabled && hedging
+                ? new ScheduledThreadPoolExecutor(1, Thread.ofPlatform()
+                        .name("proxy-hedge")
+                        .daemon(true)
+                        .factory())
+                : null;
+        if (hedgeScheduler != null) {
+            // Most hedges are cancelled because the first attempt answered; drop them right away.
+            hedgeScheduler.setRemoveOnCancelPolicy(true);
+        }
+
+        log.info("RetryPolicy enabled={}, maxRetries={}, hedging={}, budgetPercent={}, budgetBurst={}",
+                enabled, maxRetries, hedging, budgetPercent, budgetBurst);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (hedgeScheduler != null) {
+            hedgeScheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Credits the retry budget with one proxied request.
+     */
+    public void onRequest() {
+        if (enabled) {
+            budget.deposit();
+        }
+    }
+
+    /**
+     * True if the request can safely be sent more than once. Bodies are streamed from the client
+     * and cannot be replayed, so only bodyless requests qualify.
+     */
+    public boolean isEligible(ProxyRequest proxyRequest) {
+        return enabled && maxRetries > 0 && !proxyRequest.hasBody() && isIdempotent(proxyRequest.method());
+    }
+
+    public boolean isRetryableStatus(int statusCode) {
+        return statusCode == 502 || statusCode == 504;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public boolean isHedging() {
+        return hedgeScheduler != null;
+    }
+
+    /**
+     * Takes a token for one extra attempt. {@code hedge} only affects the counters.
+     */
+    public boolean tryAcquire(boolean hedge) {
+        if (!budget.tryWithdraw()) {
+            budgetRejections.increment();
+            return false;
+        }
+        (hedge ? hedges : retries).increment();
+        return true;
+    }
+
+    /**
+     * Runs {@code hedge} once the request to {@code backend} has been outstanding for the
+     * backend's p95. Returns the pending hedge, which the caller cancels once the request is
+     * answered, or null if hedging is off or the backend has no latency data yet.
+     */
+    public ScheduledFuture<?> scheduleHedge(Backend backend, Runnable hedge) {
+        if (hedgeScheduler == null) {
+            return null;
+        }
+
+        BackendMetrics metrics = metricsRegistry.get(backend.getIndex());
+        long delayNanos = metrics == null ? 0 : metrics.getLastP95LatencyNanos();
+        return delayNanos > 0 ? hedgeScheduler.schedule(hedge, delayNanos, TimeUnit.NANOSECONDS) : null;
+    }
+
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    public long getHedgeCount() {
+        return hedges.sum();
+    }
+
+    public long getBudgetRejectionCount() {
+        return budgetRejections.sum();
+    }
+
+    public double getBudgetTokens() {
+        return budget.getTokens();
+    }
+
+    private static boolean isIdempotent(String method) {
+        return switch (method) {
+            case "GET", "HEAD", "OPTIONS", "TRACE", "PUT", "DELETE" -> true;
+            default -> false;
+        };
+    }
+}
@@ -0,0 +1,29 @@
+package com.sentinel.proxy;
+
+import com.sentinel.model.Backend;
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.util.Collection;
+
+public interface RoutingStrategy {
+    Backend select(RoutingTable table);
+
+    /**
+     * Key that ties a request to a backend, for strategies that route by request content.
+     */
+    default long routingKey(HttpServletRequest request) {
+        return 0;
+    }
+
+    default Backend select(RoutingTable table, long routingKey) {
+        return select(table);
+    }
+
+    /**
+     * The strategy's choice for {@code routingKey} outside {@code excluded}, or null to let the
+     * router sample {@link #select(RoutingTable)}.
+     */
+    default Backend selectAlternative(RoutingTable table, long routingKey, Collection<Backend> excluded) {
+        return null;
+    }
+}
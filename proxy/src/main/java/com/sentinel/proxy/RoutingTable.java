@@ -0,0 +1,108 @@
+package com.sentinel.proxy;
+
+import com.sentinel.model.Backend;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+public final class RoutingTable {
+
+    static final RoutingTable EMPTY = new RoutingTable(new Backend[0], new int[0], new int[0], 0);
+
+    private final Backend[] backends;
+    private final int[] weights;
+    private final int[] cumulativeWeights;
+    private final int totalWeight;
+
+    private RoutingTable(Backend[] backends, int[] weights, int[] cumulativeWeights, int totalWeight) {
+        this.backends = backends;
+        this.weights = weights;
+        this.cumulativeWeights = cumulativeWeights;
+        this.totalWeight = totalWeight;
+    }
+
+    public static RoutingTable build(Collection<Backend> candidates) {
+        List<Backend> available = new ArrayList<>(candidates.size());
+        for (Backend backend : candidates) {
+            if (backend.isAvailable()) {
+                available.add(backend);
+            }
+        }
+
+        if (available.isEmpty()) {
+            return EMPTY;
+        }
+
+        Backend[] backends = available.toArray(new Backend[0]);
+        int[] weights = new int[backends.length];
+        int[] cumulativeWeights = new int[backends.length];
+        int total = 0;
+
+        for (int i = 0; i < backends.length; i++) {
+            weights[i] = backends[i].getEffectiveWeight();
+            total += weights[i];
+            cumulativeWeights[i] = total;
+        }
+
+        return new RoutingTable(backends, weights, cumulativeWeights, total);
+    }
+
+    public Backend select(RandomGenerator random) {
+        if (totalWeight == 0) {
+            return backends[random.nextInt(backends.length)];
+        }
+
+        int target = random.nextInt(totalWeight);
+        int low = 0;
+        int high = cumulativeWeights.length - 1;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulativeWeights[mid] > target) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+
+        return backends[low];
+    }
+
+    public boolean matches(Collection<Backend> candidates) {
+        int index = 0;
+        for (Backend backend : candidates) {
+            if (!backend.isAvailable()) {
+                continue;
+            }
+            if (index >= backends.length
+                    || backends[index] != backend
+                    || weights[index] != backend.getEffectiveWeight()) {
+                return false;
+            }
+            index++;
+        }
+        return index == backends.length;
+    }
+
+    public Backend get(int index) {
+        return backends[index];
+    }
+
+    public int getWeight(int index) {
+        return weights[index];
+    }
+
+    public int getTotalWeight() {
+        return totalWeight;
+    }
+
+    public int size() {
+        return backends.length;
+    }
+
+    public boolean isEmpty() {
+        return backends.length == 0;
+    }
+}
@@ -0,0 +1,87 @@
+package com.sentinel.proxy;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+public class ServletResponseSink implements ResponseSink {
+
+    private final HttpServletResponse response;
+    private final BufferPool bufferPool;
+    private final boolean forwardHeaders;
+    private ServletOutputStream out;
+    private byte[] scratch;
+    private volatile boolean begun;
+
+    public ServletResponseSink(HttpServletResponse response, BufferPool bufferPool, boolean forwardHeaders) {
+        this.response = response;
+        this.bufferPool = bufferPool;
+        this.forwardHeaders = forwardHeaders;
+    }
+
+    @Override
+    public void begin(int statusCode, HttpHeaders headers) {
+        begun = true;
+        response.setStatus(statusCode);
+
+        if (!forwardHeaders) {
+            headers.firstValue("Content-Type").ifPresent(response::setContentType);
+            return;
+        }
+
+        for (Map.Entry<String, List<String>> header : headers.map().entrySet()) {
+            String name = header.getKey();
+            if (HeaderFilter.isHopByHop(name)) {
+                continue;
+            }
+            for (String value : header.getValue()) {
+                response.addHeader(name, value);
+            }
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer buffer) throws IOException {
+        if (out == null) {
+            out = response.getOutputStream();
+        }
+
+        if (buffer.hasArray()) {
+            out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+            return;
+        }
+
+        if (scratch == null) {
+            scratch = bufferPool.acquire();
+        }
+
+        while (buffer.hasRemaining()) {
+            int length = Math.min(buffer.remaining(), scratch.length);
+            buffer.get(scratch, 0, length);
+            out.write(scratch, 0, length);
+        }
+    }
+
+    @Override
+    public boolean isBegun() {
+        return begun;
+    }
+
+    @Override
+    public void end() throws IOException {
+        try {
+            if (out != null) {
+                out.flush();
+            }
+        } finally {
+            bufferPool.release(scratch);
+            scratch = null;
+        }
+    }
+}
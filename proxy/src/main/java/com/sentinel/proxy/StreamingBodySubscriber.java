@@ -0,0 +1,94 @@
+package com.sentinel.proxy;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+@Slf4j
+public class StreamingBodySubscriber implements HttpResponse.BodySubscriber<Long> {
+
+    private final ResponseSink sink;
+    private final CompletableFuture<Long> result = new CompletableFuture<>();
+    private Flow.Subscription subscription;
+    private long bytesWritten;
+    private boolean downstreamClosed;
+
+    public StreamingBodySubscriber(ResponseSink sink) {
+        this.sink = sink;
+    }
+
+    static HttpResponse.BodyHandler<Long> handler(ResponseSink sink, RequestTimer timer) {
+        return info -> {
+            timer.markFirstByte();
+            sink.begin(info.statusCode(), info.headers());
+            return new StreamingBodySubscriber(sink);
+        };
+    }
+
+    @Override
+    public CompletionStage<Long> getBody() {
+        return result;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> buffers) {
+        if (downstreamClosed) {
+            return;
+        }
+
+        try {
+            for (ByteBuffer buffer : buffers) {
+                bytesWritten += buffer.remaining();
+                sink.write(buffer);
+            }
+            subscription.request(1);
+        } catch (IOException e) {
+            log.debug("Client closed connection after {} bytes: {}", bytesWritten, e.getMessage());
+            downstreamClosed = true;
+            subscription.cancel();
+            closeSink();
+            result.complete(bytesWritten);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        closeSink();
+        result.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        if (downstreamClosed) {
+            return;
+        }
+
+        try {
+            sink.end();
+            result.complete(bytesWritten);
+        } catch (IOException e) {
+            log.debug("Failed to flush response after {} bytes: {}", bytesWritten, e.getMessage());
+            result.complete(bytesWritten);
+        }
+    }
+
+    private void closeSink() {
+        try {
+            sink.abort();
+        } catch (IOException e) {
+            log.debug("Failed to close response sink: {}", e.getMessage());
+        }
+    }
+}
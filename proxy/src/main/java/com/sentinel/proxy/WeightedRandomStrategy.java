@@ -0,0 +1,17 @@
+package com.sentinel.proxy;
+
+import com.sentinel.model.Backend;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+@Component
+@ConditionalOnProperty(name = "sentinel.proxy.routingStrategy", havingValue = "weighted", matchIfMissing = true)
+public class WeightedRandomStrategy implements RoutingStrategy {
+
+    @Override
+    public Backend select(RoutingTable table) {
+        return table.select(ThreadLocalRandom.current());
+    }
+}
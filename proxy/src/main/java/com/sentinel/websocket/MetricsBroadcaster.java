@@ -3,6 +3,7 @@ package com.sentinel.websocket;
 import com.sentinel.control.HealthScorer;
 import com.sentinel.control.OverloadDetector.OverloadType;
 import com.sentinel.control.RiskLevel;
+import com.sentinel.metrics.BackendMetricsSnapshot;
 import com.sentinel.metrics.MetricsRegistry;
 import com.sentinel.model.Backend;
 import com.sentinel.model.BackendHealth;
@@ -29,6 +30,23 @@ public class MetricsBroadcaster {
             SystemMode systemMode,
             RiskLevel riskLevel,
             OverloadType overloadType
+    ) {
+        if (webSocketHandler.getActiveConnections() == 0) {
+            log.debug("No active WebSocket connections, skipping broadcast");
+            return;
+        }
+
+        broadcastMetrics(backends, healthAssessments, metricsRegistry.snapshotAll(),
+                systemMode, riskLevel, overloadType);
+    }
+
+    public void broadcastMetrics(
+            List<Backend> backends,
+            Map<String, BackendHealth> healthAssessments,
+            Map<String, BackendMetricsSnapshot> snapshots,
+            SystemMode systemMode,
+            RiskLevel riskLevel,
+            OverloadType overloadType
     ) {
         int activeConnections = webSocketHandler.getActiveConnections();
         if (activeConnections == 0) {
@@ -42,27 +60,20 @@ public class MetricsBroadcaster {
             var backendSnapshots = backends.stream()
                     .map(backend -> {
                         var health = healthAssessments.get(backend.getId());
-                        var metricsOpt = metricsRegistry.get(backend.getId());
-
-                        var metricsData = metricsOpt.map(metrics ->
-                                MetricsSnapshot.MetricsData.builder()
-                                        .p50Latency(metrics.getP50Latency())
-                                        .p95Latency(metrics.getP95Latency())
-                                        .p99Latency(metrics.getP99Latency())
-                                        .errorRate(metrics.getErrorRate())
-                                        .timeoutRate(metrics.getTimeoutRate())
-                                        .inflightRequests((int) metrics.getInflightCount())
-                                        .requestRate(metrics.getRequestsPerSecond())
-                                        .build()
-                        ).orElse(MetricsSnapshot.MetricsData.builder()
-                                .p50Latency(0)
-                                .p95Latency(0)
-                                .p99Latency(0)
-                                .errorRate(0)
-                                .timeoutRate(0)
-                                .inflightRequests(0)
-                                .requestRate(0)
-                                .build());
+                        var metrics = snapshots.getOrDefault(backend.getId(),
+                                BackendMetricsSnapshot.empty(backend.getId()));
+
+                        var metricsData = MetricsSnapshot.MetricsData.builder()
+                                .p50Latency(metrics.getP50Latency())
+                                .p95Latency(metrics.getP95Latency())
+                                .p99Latency(metrics.getP99Latency())
+                                .p95FirstByteLatency(metrics.getP95FirstByteLatency())
+                                .poolWaitTime(metrics.getPoolWaitTime())
+                                .errorRate(metrics.getErrorRate())
+                                .timeoutRate(metrics.getTimeoutRate())
+                                .inflightRequests((int) metrics.getInflightCount())
+                                .requestRate(metrics.getRequestsPerSecond())
+                                .build();
 
                         return MetricsSnapshot.BackendSnapshot.builder()
                                 .id(backend.getId())
@@ -100,24 +111,27 @@ public class MetricsBroadcaster {
             List<MetricsSnapshot.BackendSnapshot> snapshots
     ) {
         int totalBackends = backends.size();
-        int healthyBackends = (int) backends.stream()
-                .filter(b -> b.getState() == BackendState.HEALTHY)
-                .count();
-        int degradedBackends = (int) backends.stream()
-                .filter(b -> b.getState() == BackendState.DEGRADING)
-                .count();
-        int unhealthyBackends = (int) backends.stream()
-                .filter(b -> b.getState() == BackendState.UNHEALTHY)
-                .count();
-
-        double totalRps = snapshots.stream()
-                .mapToDouble(s -> s.getMetrics().getRequestRate())
-                .sum();
-
-        double avgLatency = snapshots.stream()
-                .mapToDouble(s -> s.getMetrics().getP50Latency())
-                .average()
-                .orElse(0.0);
+        int healthyBackends = 0;
+        int degradedBackends = 0;
+        int unhealthyBackends = 0;
+        for (Backend backend : backends) {
+            BackendState state = backend.getState();
+            if (state == BackendState.HEALTHY) {
+                healthyBackends++;
+            } else if (state == BackendState.DEGRADING) {
+                degradedBackends++;
+            } else if (state == BackendState.UNHEALTHY) {
+                unhealthyBackends++;
+            }
+        }
+
+        double totalRps = 0;
+        double totalLatency = 0;
+        for (MetricsSnapshot.BackendSnapshot snapshot : snapshots) {
+            totalRps += snapshot.getMetrics().getRequestRate();
+            totalLatency += snapshot.getMetrics().getP50Latency();
+        }
+        double avgLatency = snapshots.isEmpty() ? 0.0 : totalLatency / snapshots.size();
 
         return MetricsSnapshot.SystemStats.builder()
                 .totalBackends(totalBackends)
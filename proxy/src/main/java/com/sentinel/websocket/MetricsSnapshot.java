@@ -39,6 +39,9 @@ public class MetricsSnapshot {
         double p50Latency;
         double p95Latency;
         double p99Latency;
+        double p95FirstByteLatency;
+        // Time spent waiting for a connection pool permit, not TCP connect time.
+        double poolWaitTime;
         double errorRate;
         double timeoutRate;
         int inflightRequests;
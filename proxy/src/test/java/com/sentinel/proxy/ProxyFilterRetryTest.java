@@ -0,0 +1,208 @@
+package com.sentinel.proxy;
+
+import com.sentinel.config.BackendConfig.ProxyProperties;
+import com.sentinel.metrics.MetricsCollector;
+import com.sentinel.metrics.MetricsRegistry;
+import com.sentinel.model.Backend;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Drives the retrying exchange of {@link ProxyFilter} through its async path. Upstream attempts
+ * are futures completed by the test, and the hedge timer is fired by hand.
+ */
+class ProxyFilterRetryTest {
+
+    private static final HttpHeaders NO_HEADERS = HttpHeaders.of(Map.of(), (name, value) -> true);
+
+    private final Backend first = new Backend("backend-1", "http://localhost:9001", 100);
+    private final Backend second = new Backend("backend-2", "http://localhost:9002", 100);
+
+    private final List<Attempt> attempts = new ArrayList<>();
+    private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+    private RequestRouter router;
+    private ConcurrencyLimiter concurrencyLimiter;
+    private RetryPolicy retryPolicy;
+    private HttpServletRequest httpRequest;
+    private HttpServletResponse httpResponse;
+    private AsyncContext asyncContext;
+    private Runnable hedge;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        router = mock(RequestRouter.class);
+        when(router.selectBackend(anyLong())).thenReturn(Optional.of(first));
+        when(router.selectAlternative(anyLong(), any())).thenReturn(Optional.of(second));
+
+        concurrencyLimiter = mock(ConcurrencyLimiter.class);
+        when(concurrencyLimiter.tryAcquire(anyString())).thenReturn(true);
+
+        httpRequest = mock(HttpServletRequest.class);
+        when(httpRequest.getRequestURI()).thenReturn("/items");
+        when(httpRequest.getMethod()).thenReturn("GET");
+        when(httpRequest.getContentLengthLong()).thenReturn(-1L);
+        when(httpRequest.isAsyncSupported()).thenReturn(true);
+        asyncContext = mock(AsyncContext.class);
+        when(httpRequest.startAsync()).thenReturn(asyncContext);
+
+        httpResponse = mock(HttpServletResponse.class);
+        when(httpResponse.getOutputStream()).thenReturn(new CapturingOutputStream(written));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (retryPolicy != null) {
+            retryPolicy.stop();
+        }
+    }
+
+    @Test
+    void hedgeAnswersWhileFirstAttemptIsPending() throws Exception {
+        ProxyFilter filter = filter(20);
+        filter.doFilter(httpRequest, httpResponse, mock(FilterChain.class));
+        assertEquals(1, attempts.size());
+
+        hedge.run();
+        assertEquals(2, attempts.size());
+        assertSame(second, attempts.get(1).backend());
+
+        Attempt hedged = attempts.get(1);
+        hedged.sink().begin(200, NO_HEADERS);
+        hedged.future().complete(result(200));
+
+        verify(httpResponse).setStatus(200);
+        verify(asyncContext).complete();
+        assertFalse(attempts.get(0).future().isDone());
+        assertEquals(1, retryPolicy.getHedgeCount());
+    }
+
+    @Test
+    void attemptThatBeginsAfterTheWinnerIsLost() throws Exception {
+        ProxyFilter filter = filter(20);
+        filter.doFilter(httpRequest, httpResponse, mock(FilterChain.class));
+        hedge.run();
+
+        Attempt original = attempts.get(0);
+        Attempt hedged = attempts.get(1);
+        hedged.sink().begin(200, NO_HEADERS);
+        hedged.future().complete(result(200));
+
+        original.sink().begin(200, NO_HEADERS);
+        AttemptSink loser = (AttemptSink) original.sink();
+        assertTrue(loser.isLost());
+        assertFalse(loser.isBegun());
+        assertThrows(IOException.class, () -> loser.write(ByteBuffer.wrap(new byte[] {1})));
+        original.future().complete(result(200));
+
+        verify(httpResponse, times(1)).setStatus(anyInt());
+        verify(asyncContext, times(1)).complete();
+        assertEquals(0, written.size());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {502, 504})
+    void exhaustedBudgetAnswersWithProxyError(int statusCode) throws Exception {
+        ProxyFilter filter = filter(0);
+        filter.doFilter(httpRequest, httpResponse, mock(FilterChain.class));
+
+        Attempt original = attempts.get(0);
+        original.sink().begin(statusCode, NO_HEADERS);
+        original.future().complete(result(statusCode));
+
+        assertEquals(1, attempts.size());
+        assertEquals(1, retryPolicy.getBudgetRejectionCount());
+        verify(concurrencyLimiter).cancel(second.getId());
+        verify(httpResponse).setStatus(statusCode);
+        assertEquals(statusCode == 504 ? "Gateway Timeout" : "Bad Gateway",
+                written.toString(StandardCharsets.UTF_8));
+        verify(asyncContext).complete();
+    }
+
+    private ProxyFilter filter(int budgetBurst) {
+        retryPolicy = spy(new RetryPolicy(true, 1, true, 10.0, budgetBurst, mock(MetricsRegistry.class)));
+        doAnswer(invocation -> {
+            hedge = invocation.getArgument(1);
+            return null;
+        }).when(retryPolicy).scheduleHedge(any(), any());
+
+        HttpProxyClient proxyClient = mock(HttpProxyClient.class);
+        when(proxyClient.forwardRequestAsync(any(), any(), any())).thenAnswer(invocation -> {
+            Attempt attempt = new Attempt(invocation.getArgument(0), invocation.getArgument(2),
+                    new CompletableFuture<>());
+            attempts.add(attempt);
+            return attempt.future();
+        });
+
+        CircuitGate circuitGate = mock(CircuitGate.class);
+        when(circuitGate.tryAcquire(any())).thenReturn(CircuitGate.Admission.ADMITTED);
+
+        ResponseCache responseCache = mock(ResponseCache.class);
+        when(responseCache.lookup(any())).thenAnswer(invocation -> new ResponseCache.Lookup(
+                ResponseCache.Status.BYPASS, null, invocation.getArgument(0), null, false, false));
+        when(responseCache.sink(any(), any())).thenAnswer(invocation -> invocation.getArgument(1));
+
+        ProxyProperties proxyProperties = new ProxyProperties();
+        proxyProperties.setAsync(true);
+        proxyProperties.setForwardHeaders(false);
+
+        return new ProxyFilter(router, proxyClient, mock(MetricsCollector.class), mock(BufferPool.class),
+                concurrencyLimiter, circuitGate, retryPolicy, responseCache, mock(RequestCoalescer.class),
+                proxyProperties);
+    }
+
+    private static HttpProxyClient.ProxyResult result(int statusCode) {
+        return new HttpProxyClient.ProxyResult(statusCode, null, 0, 1_000_000, 2_000_000, (byte) 0);
+    }
+
+    private record Attempt(Backend backend, ResponseSink sink,
+                           CompletableFuture<HttpProxyClient.ProxyResult> future) {
+    }
+
+    private static final class CapturingOutputStream extends ServletOutputStream {
+
+        private final ByteArrayOutputStream target;
+
+        CapturingOutputStream(ByteArrayOutputStream target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(int b) {
+            target.write(b);
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+        }
+    }
+}